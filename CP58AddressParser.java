@@ -0,0 +1,147 @@
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * Reads a recipient's address JSON in a single streaming pass, producing the
+ * printed CP58 address and the Malaysian residency flag together. Results are
+ * kept in a bounded cache keyed by the raw JSON, since companies of one
+ * branch share the same address string ({@code cp58.address.cache-size}).
+ */
+@Component
+public class CP58AddressParser {
+
+    public static final short RESIDENT = 1;
+    public static final short NON_RESIDENT = 2;
+
+    private static final Address EMPTY = new Address("", NON_RESIDENT);
+
+    private final CP58LruCache<String, Address> addresses;
+
+    public CP58AddressParser(@Value("${cp58.address.cache-size:10000}") int cacheSize) {
+        this.addresses = new CP58LruCache<>(cacheSize);
+    }
+
+    public Address parse(String jsonAddress) {
+        if (jsonAddress == null) {
+            return EMPTY;
+        }
+        return addresses.get(jsonAddress, CP58AddressParser::read);
+    }
+
+    /**
+     * Parses without the cache. Address parts are joined with {@code ", "} in
+     * the order line 1, line 2, city, state, postcode, country, followed by the
+     * last unrecognised key; empty parts are left out.
+     */
+    public static Address read(String jsonAddress) {
+        if (jsonAddress == null) {
+            return EMPTY;
+        }
+
+        String addressLine1 = "";
+        String addressLine2 = "";
+        String city = "";
+        String state = "";
+        String country = "";
+        String postcode = "";
+        String extra = "";
+
+        try (JsonReader reader = new JsonReader(new StringReader(jsonAddress))) {
+            // Same leniency as JsonParser.parseString: single quotes, unquoted keys and values
+            reader.setLenient(true);
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String key = reader.nextName();
+                String value = readValue(reader);
+
+                switch (key) {
+                    case "addressLine1":
+                        addressLine1 = value;
+                        break;
+                    case "addressLine2":
+                        addressLine2 = value;
+                        break;
+                    case "city":
+                        city = value;
+                        break;
+                    case "state":
+                        state = value;
+                        break;
+                    case "country":
+                        country = value;
+                        break;
+                    case "postcode":
+                        postcode = value;
+                        break;
+                    default:
+                        extra = value;
+                }
+            }
+            reader.endObject();
+        } catch (IOException | IllegalStateException e) {
+            throw new JsonSyntaxException("Invalid CP58 address JSON: " + jsonAddress, e);
+        }
+
+        StringBuilder formattedAddress = new StringBuilder();
+        append(formattedAddress, addressLine1);
+        append(formattedAddress, addressLine2);
+        append(formattedAddress, city);
+        append(formattedAddress, state);
+        append(formattedAddress, postcode);
+        append(formattedAddress, country);
+        append(formattedAddress, extra);
+
+        short residentInMalaysia = CP58Service.MALAYSIA.equalsIgnoreCase(country) ? RESIDENT : NON_RESIDENT;
+        return new Address(formattedAddress.toString(), residentInMalaysia);
+    }
+
+    private static String readValue(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        switch (token) {
+            case STRING:
+            case NUMBER:
+                return reader.nextString().trim();
+            case BOOLEAN:
+                return String.valueOf(reader.nextBoolean());
+            case NULL:
+                reader.nextNull();
+                return "";
+            default:
+                // Nested objects and arrays are not part of a printable address
+                reader.skipValue();
+                return "";
+        }
+    }
+
+    private static void append(StringBuilder formattedAddress, String part) {
+        if (part.isEmpty()) {
+            return;
+        }
+        if (formattedAddress.length() > 0) formattedAddress.append(", ");
+        formattedAddress.append(part);
+    }
+
+    public static final class Address {
+        private final String formattedAddress;
+        private final short residentInMalaysia;
+
+        private Address(String formattedAddress, short residentInMalaysia) {
+            this.formattedAddress = formattedAddress;
+            this.residentInMalaysia = residentInMalaysia;
+        }
+
+        public String getFormattedAddress() {
+            return formattedAddress;
+        }
+
+        public Short getResidentInMalaysia() {
+            return residentInMalaysia;
+        }
+    }
+}
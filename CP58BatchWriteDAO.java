@@ -0,0 +1,73 @@
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.PersistenceUnitUtil;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Batched writes for the CP58 jobs. Statements are sent in JDBC batches of
+ * {@code cp58.persistence.batch-size} and every batch is flushed and its
+ * entities detached right away, so a large run neither issues one round trip
+ * per row nor keeps every row managed. Other entities in the caller's
+ * persistence context are left alone.
+ */
+@Repository
+public class CP58BatchWriteDAO {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final int batchSize;
+
+    public CP58BatchWriteDAO(@Value("${cp58.persistence.batch-size:500}") int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Inserts new entities and updates existing ones, then detaches all of
+     * them. Callers must not rely on the passed instances staying managed.
+     */
+    public <T> void saveAll(Collection<T> entities) {
+        if (entities.isEmpty()) {
+            return;
+        }
+
+        Session session = entityManager.unwrap(Session.class);
+        Integer previousBatchSize = session.getJdbcBatchSize();
+        session.setJdbcBatchSize(batchSize);
+        try {
+            PersistenceUnitUtil persistenceUnitUtil = entityManager.getEntityManagerFactory().getPersistenceUnitUtil();
+            List<Object> batch = new ArrayList<>(Math.min(batchSize, entities.size()));
+            for (T entity : entities) {
+                Object managed = entity;
+                if (!entityManager.contains(entity)) {
+                    if (persistenceUnitUtil.getIdentifier(entity) == null) {
+                        entityManager.persist(entity);
+                    } else {
+                        managed = entityManager.merge(entity);
+                    }
+                }
+                batch.add(managed);
+                if (batch.size() == batchSize) {
+                    flushAndDetach(batch);
+                }
+            }
+            flushAndDetach(batch);
+        } finally {
+            session.setJdbcBatchSize(previousBatchSize);
+        }
+    }
+
+    private void flushAndDetach(List<Object> batch) {
+        entityManager.flush();
+        for (Object entity : batch) {
+            entityManager.detach(entity);
+        }
+        batch.clear();
+    }
+}
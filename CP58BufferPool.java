@@ -0,0 +1,52 @@
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reusable in-memory buffers for exported CP58 documents. A buffer is read
+ * back through {@link Buffer#toInputStream()} without copying its content,
+ * and up to {@code cp58.export.buffer-pool-size} released buffers are kept
+ * for the next document instead of being reallocated.
+ */
+@Component
+public class CP58BufferPool {
+
+    private final BlockingQueue<Buffer> buffers;
+    private final int initialSize;
+
+    public CP58BufferPool(@Value("${cp58.export.buffer-pool-size:32}") int poolSize,
+                          @Value("${cp58.export.buffer-initial-size:262144}") int initialSize) {
+        this.buffers = new ArrayBlockingQueue<>(Math.max(1, poolSize));
+        this.initialSize = initialSize;
+    }
+
+    public Buffer borrow() {
+        Buffer buffer = buffers.poll();
+        return buffer != null ? buffer : new Buffer(initialSize);
+    }
+
+    public void release(Buffer buffer) {
+        buffer.reset();
+        buffers.offer(buffer);
+    }
+
+    public static class Buffer extends ByteArrayOutputStream {
+
+        private Buffer(int size) {
+            super(size);
+        }
+
+        /**
+         * Reads the current content directly from the backing array. Can be
+         * called again for a retry as long as the buffer is not released.
+         */
+        public synchronized InputStream toInputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Unpacks bundles written by {@link CP58BundleWriter}, checking every
+ * extracted document against the checksum recorded in the bundle manifest.
+ */
+public final class CP58BundleReader {
+
+    private CP58BundleReader() {
+    }
+
+    /**
+     * Extracts the entries whose name matches {@code entryPattern} into
+     * {@code targetDir} and returns the extracted files.
+     */
+    public static List<Path> extract(Path bundleFile, Path targetDir, Pattern entryPattern) throws IOException {
+        List<Path> extracted = new ArrayList<>();
+        try (ZipFile zipFile = new ZipFile(bundleFile.toFile())) {
+            Map<String, String> checksums = readManifest(zipFile, bundleFile);
+
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String entryName = entry.getName();
+                if (entry.isDirectory() || entryName.contains("/") || !entryPattern.matcher(entryName).matches()) {
+                    continue;
+                }
+
+                Path targetFile = targetDir.resolve(entryName);
+                String checksum = copyEntry(zipFile, entry, targetFile);
+                String expected = checksums.get(entryName);
+                if (expected == null || !expected.equals(checksum)) {
+                    Files.deleteIfExists(targetFile);
+                    throw new IOException("Checksum mismatch for " + entryName + " in " + bundleFile);
+                }
+                extracted.add(targetFile);
+            }
+        }
+        return extracted;
+    }
+
+    private static Map<String, String> readManifest(ZipFile zipFile, Path bundleFile) throws IOException {
+        ZipEntry manifestEntry = zipFile.getEntry(CP58BundleWriter.MANIFEST_NAME);
+        if (manifestEntry == null) {
+            throw new IOException("No " + CP58BundleWriter.MANIFEST_NAME + " in " + bundleFile);
+        }
+
+        Map<String, String> checksums = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(zipFile.getInputStream(manifestEntry), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] columns = line.split(",");
+                if (columns.length == 3 && !line.equals(CP58BundleWriter.MANIFEST_HEADER)) {
+                    checksums.put(columns[1], columns[2]);
+                }
+            }
+        }
+        return checksums;
+    }
+
+    private static String copyEntry(ZipFile zipFile, ZipEntry entry, Path targetFile) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try (InputStream in = new DigestInputStream(zipFile.getInputStream(entry), digest);
+                 OutputStream out = Files.newOutputStream(targetFile)) {
+                byte[] chunk = new byte[8192];
+                int read;
+                while ((read = in.read(chunk)) != -1) {
+                    out.write(chunk, 0, read);
+                }
+            }
+            return CP58BundleWriter.toHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.SftpException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The bundles of one generation run, one per recipient type and format,
+ * opened on first use and uploaded when the run completes.
+ */
+@Slf4j
+public class CP58BundleSet {
+
+    private final CP58SftpUploader cp58SftpUploader;
+    private final Map<String, CP58BundleWriter> bundles = new ConcurrentHashMap<>();
+
+    public CP58BundleSet(CP58SftpUploader cp58SftpUploader) {
+        this.cp58SftpUploader = cp58SftpUploader;
+    }
+
+    public CP58BundleWriter get(CommissionReceiverType type, CP58ReportExporter exporter)
+            throws IOException, JSchException, SftpException, InterruptedException {
+        String remotePath = exporter.getOutputPath(type) + "/" + CP58BundleWriter.buildBundleName(type);
+        CP58BundleWriter bundle = bundles.get(remotePath);
+        if (bundle != null) {
+            return bundle;
+        }
+        synchronized (this) {
+            bundle = bundles.get(remotePath);
+            if (bundle == null) {
+                bundle = new CP58BundleWriter(type, remotePath, cp58SftpUploader.openSpooledUploadStream(remotePath));
+                bundles.put(remotePath, bundle);
+            }
+            return bundle;
+        }
+    }
+
+    /**
+     * Uploads every bundle and returns the types whose bundle failed, so their
+     * recipients are not reported as generated.
+     */
+    public List<CommissionReceiverType> closeAll() {
+        List<CommissionReceiverType> failedTypes = new ArrayList<>();
+        for (CP58BundleWriter bundle : bundles.values()) {
+            try {
+                bundle.close();
+                log.info("Uploaded CP58 bundle " + bundle.getRemotePath());
+            } catch (IOException e) {
+                log.error("Failed to upload CP58 bundle " + bundle.getRemotePath(), e);
+                if (!failedTypes.contains(bundle.getType())) {
+                    failedTypes.add(bundle.getType());
+                }
+            }
+        }
+        return failedTypes;
+    }
+
+    public void abortAll() {
+        for (CP58BundleWriter bundle : bundles.values()) {
+            bundle.abort();
+        }
+    }
+}
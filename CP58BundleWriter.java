@@ -0,0 +1,106 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * One compressed archive holding all documents of a recipient type in one
+ * format, written while the documents are rendered. The archive ends with a
+ * {@value #MANIFEST_NAME} listing {@code code,entry,sha256} for every document.
+ */
+public class CP58BundleWriter {
+
+    public static final String MANIFEST_NAME = "manifest.csv";
+    public static final String MANIFEST_HEADER = "code,entry,sha256";
+    public static final Pattern BUNDLE_FILE_PATTERN = Pattern.compile("CP58_[A-Z]+_\\d{8}\\.zip");
+
+    private final CommissionReceiverType type;
+    private final String remotePath;
+    private final CP58SftpUploader.UploadStream outputStream;
+    private final ZipOutputStream zip;
+    private final StringBuilder manifest = new StringBuilder(MANIFEST_HEADER).append('\n');
+    private boolean broken;
+
+    public CP58BundleWriter(CommissionReceiverType type, String remotePath, CP58SftpUploader.UploadStream outputStream) {
+        this.type = type;
+        this.remotePath = remotePath;
+        this.outputStream = outputStream;
+        this.zip = new ZipOutputStream(outputStream);
+    }
+
+    public static String buildBundleName(CommissionReceiverType type) {
+        return "CP58_" + type + "_" + LocalDate.now().format(DateTimeFormatter.ofPattern("yyyyMMdd")) + ".zip";
+    }
+
+    public CommissionReceiverType getType() {
+        return type;
+    }
+
+    public String getRemotePath() {
+        return remotePath;
+    }
+
+    public synchronized void add(String code, String entryName, InputStream content) throws IOException {
+        if (broken) {
+            throw new IOException("Bundle " + remotePath + " is no longer writable");
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            zip.putNextEntry(new ZipEntry(entryName));
+            try (InputStream in = new DigestInputStream(content, digest)) {
+                byte[] chunk = new byte[8192];
+                int read;
+                while ((read = in.read(chunk)) != -1) {
+                    zip.write(chunk, 0, read);
+                }
+            }
+            zip.closeEntry();
+            manifest.append(code).append(',').append(entryName).append(',').append(toHex(digest.digest())).append('\n');
+        } catch (IOException | RuntimeException e) {
+            broken = true;
+            throw e;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Appends the manifest and uploads the archive.
+     */
+    public synchronized void close() throws IOException {
+        if (broken) {
+            outputStream.abort();
+            throw new IOException("Bundle " + remotePath + " was not completed");
+        }
+        try {
+            zip.putNextEntry(new ZipEntry(MANIFEST_NAME));
+            zip.write(manifest.toString().getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+            zip.finish();
+        } catch (IOException | RuntimeException e) {
+            outputStream.abort();
+            throw e;
+        }
+        outputStream.close();
+    }
+
+    public synchronized void abort() {
+        broken = true;
+        outputStream.abort();
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
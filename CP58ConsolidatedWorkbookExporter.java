@@ -0,0 +1,99 @@
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Writes one workbook per recipient type with a row per {@link CommissionCP58},
+ * read in chunks of {@code cp58.generation.chunk-size} and streamed into
+ * SFTP. Controlled by {@code cp58.excel.mode}: {@code per-recipient}
+ * (default) keeps the Jasper XLSX per recipient,
+ * {@code consolidated} replaces it with these workbooks and {@code both}
+ * produces both.
+ */
+@Slf4j
+@Component
+public class CP58ConsolidatedWorkbookExporter {
+
+    public static final String MODE_PER_RECIPIENT = "per-recipient";
+    public static final String MODE_CONSOLIDATED = "consolidated";
+    public static final String MODE_BOTH = "both";
+
+    private static final String[] HEADER = {
+            "Recipient Code", "Recipient Name", "Identification No", "Income Tax No", "Resident In Malaysia",
+            "Address", "Referral", "Vehicle", "House", "Tour Travel Package", "Training Development", "Others"
+    };
+
+    private final CommissionCP58StreamDAO commissionCP58StreamDAO;
+    private final CP58SftpUploader cp58SftpUploader;
+    private final CP58XlsxExporter cp58XlsxExporter;
+    private final String mode;
+    private final int chunkSize;
+
+    public CP58ConsolidatedWorkbookExporter(CommissionCP58StreamDAO commissionCP58StreamDAO,
+                                            CP58SftpUploader cp58SftpUploader,
+                                            CP58XlsxExporter cp58XlsxExporter,
+                                            @Value("${cp58.excel.mode:" + MODE_PER_RECIPIENT + "}") String mode,
+                                            @Value("${cp58.generation.chunk-size:500}") int chunkSize) {
+        this.commissionCP58StreamDAO = commissionCP58StreamDAO;
+        this.cp58SftpUploader = cp58SftpUploader;
+        this.cp58XlsxExporter = cp58XlsxExporter;
+        this.mode = mode;
+        this.chunkSize = chunkSize;
+    }
+
+    public boolean isEnabled() {
+        return MODE_CONSOLIDATED.equals(mode) || MODE_BOTH.equals(mode);
+    }
+
+    /**
+     * Exports every type and records a failure on the result for each type
+     * whose workbook could not be written; the other types are still exported.
+     */
+    public void exportAll(CommissionReceiverType[] types, int years, CP58GenerationResult result) throws InterruptedException {
+        for (CommissionReceiverType type : types) {
+            try {
+                export(type, years);
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                log.error("Failed to write consolidated CP58 workbook for " + type, e);
+                result.recordFailure(type, "workbook", e);
+            }
+        }
+    }
+
+    public void export(CommissionReceiverType type, int years) throws Exception {
+        String remotePath = cp58XlsxExporter.getOutputPath(type) + "/" + buildWorkbookName(type);
+        CP58SftpUploader.UploadStream outputStream = cp58SftpUploader.openSpooledUploadStream(remotePath);
+        try {
+            CP58WorkbookWriter writer = new CP58WorkbookWriter(outputStream, type.toString());
+            writer.writeHeader(HEADER);
+            long lastId = 0;
+            List<CommissionCP58> chunk;
+            while (!(chunk = commissionCP58StreamDAO.findChunk(type, years, lastId, chunkSize)).isEmpty()) {
+                for (CommissionCP58 cp58 : chunk) {
+                    writer.writeRow(cp58.getRecipientCode(), cp58.getRecipientName(),
+                            cp58.getRecipientIdentificationNo(), cp58.getRecipientIncomeTaxNo(),
+                            cp58.getResidentInMalaysia(), cp58.getRecipientAddress(),
+                            cp58.getTotalReferralAmount(), cp58.getTotalVehicleIncentive(),
+                            cp58.getTotalHouseIncentive(), cp58.getTotalTourTravelPackageIncentive(),
+                            cp58.getTotalTrainingDevelopmentIncentive(), cp58.getTotalOtherIncentive());
+                }
+                lastId = chunk.get(chunk.size() - 1).getId();
+            }
+            writer.close();
+            log.info("Wrote " + (writer.getRowCount() - 1) + " rows to consolidated CP58 workbook " + remotePath);
+        } catch (Exception e) {
+            outputStream.abort();
+            throw e;
+        }
+    }
+
+    public static String buildWorkbookName(CommissionReceiverType type) {
+        return "CP58_" + type + "_" + LocalDate.now().format(DateTimeFormatter.ofPattern("yyyyMMdd")) + ".xlsx";
+    }
+}
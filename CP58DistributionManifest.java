@@ -0,0 +1,124 @@
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.SftpException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Lists the PDF files a generation run produced for each recipient type, so
+ * distribution can pick them up without scanning and matching every file in
+ * the output folder. Every generation chunk writes its own
+ * {@code CP58_MANIFEST_<timestamp>_<uuid>.csv} into the
+ * {@value #MANIFEST_DIRECTORY} folder below the PDFs of the type, so finding
+ * them never lists the documents themselves; the random part keeps chunks
+ * that nodes commit in the same millisecond from overwriting each other.
+ * Distribution reads all manifests it finds and archives them with the
+ * documents.
+ */
+@Slf4j
+@Component
+public class CP58DistributionManifest {
+
+    public static final String MANIFEST_DIRECTORY = "manifests";
+    public static final String MANIFEST_GLOB = "CP58_MANIFEST_*.csv";
+    private static final String MANIFEST_HEADER = "code,file";
+
+    private final CP58SftpUploader cp58SftpUploader;
+    private final CP58PdfExporter cp58PdfExporter;
+
+    public CP58DistributionManifest(CP58SftpUploader cp58SftpUploader, CP58PdfExporter cp58PdfExporter) {
+        this.cp58SftpUploader = cp58SftpUploader;
+        this.cp58PdfExporter = cp58PdfExporter;
+    }
+
+    /**
+     * Uploads one manifest per type found in {@code successes}, typically one
+     * generation chunk. A type whose manifest cannot be uploaded is recorded
+     * as a failure on {@code result} and returned, so the caller can leave its
+     * recipients to be rendered again.
+     */
+    public Set<String> write(List<CP58GenerationResult.Success> successes, CP58GenerationResult result) throws InterruptedException {
+        Map<String, StringBuilder> manifests = new LinkedHashMap<>();
+        for (CP58GenerationResult.Success success : successes) {
+            for (String file : success.getFiles()) {
+                if (file.endsWith(cp58PdfExporter.getExtension())) {
+                    manifests.computeIfAbsent(success.getType(), type -> new StringBuilder(MANIFEST_HEADER).append('\n'))
+                            .append(success.getCode()).append(',')
+                            .append(file.substring(file.lastIndexOf('/') + 1)).append('\n');
+                }
+            }
+        }
+
+        Set<String> failedTypes = new HashSet<>();
+        String manifestName = "CP58_MANIFEST_" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmssSSS"))
+                + "_" + UUID.randomUUID() + ".csv";
+        for (Map.Entry<String, StringBuilder> manifest : manifests.entrySet()) {
+            CommissionReceiverType type = CommissionReceiverType.valueOf(manifest.getKey());
+            String remoteDir = cp58PdfExporter.getOutputPath(type) + "/" + MANIFEST_DIRECTORY;
+            String remotePath = remoteDir + "/" + manifestName;
+            try {
+                // Checked per chunk, since the transfer to distribution may take the folder along
+                cp58SftpUploader.createDirectory(remoteDir);
+                cp58SftpUploader.upload(remotePath, manifest.getValue().toString().getBytes(StandardCharsets.UTF_8));
+                log.info("Uploaded CP58 distribution manifest " + remotePath);
+            } catch (IOException | JSchException | SftpException | RuntimeException e) {
+                log.error("Failed to upload CP58 distribution manifest " + remotePath, e);
+                failedTypes.add(manifest.getKey());
+                result.recordFailure(type, "manifest", e);
+            }
+        }
+        return failedTypes;
+    }
+
+    /**
+     * Manifests waiting for the documents in {@code typeDirectory}, oldest
+     * first. Only the {@value #MANIFEST_DIRECTORY} folder is listed.
+     */
+    public List<Path> find(Path typeDirectory) throws IOException {
+        List<Path> manifests = new ArrayList<>();
+        Path directory = typeDirectory.resolve(MANIFEST_DIRECTORY);
+        if (!Files.isDirectory(directory)) {
+            return manifests;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, MANIFEST_GLOB)) {
+            for (Path manifest : stream) {
+                manifests.add(manifest);
+            }
+        }
+        Collections.sort(manifests);
+        return manifests;
+    }
+
+    /**
+     * File names listed in a manifest, in the order they were generated.
+     */
+    public List<String> read(Path manifest) throws IOException {
+        List<String> fileNames = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.indexOf(',');
+                if (separator > 0 && !line.equals(MANIFEST_HEADER)) {
+                    fileNames.add(line.substring(separator + 1));
+                }
+            }
+        }
+        return fileNames;
+    }
+}
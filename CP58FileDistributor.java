@@ -0,0 +1,150 @@
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * File operations of CP58 distribution, run on {@code cp58.distribution.workers}
+ * threads. Distributed copies are hard links where the file system allows it
+ * ({@code cp58.distribution.hard-link}), and archiving is a rename, so on one
+ * file system neither step copies file content.
+ */
+@Slf4j
+@Component
+public class CP58FileDistributor {
+
+    private final ExecutorService executor;
+    private final boolean hardLink;
+
+    public CP58FileDistributor(@Value("${cp58.distribution.workers:4}") int workers,
+                               @Value("${cp58.distribution.hard-link:true}") boolean hardLink) {
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, workers), runnable -> {
+            Thread thread = new Thread(runnable, "cp58-distribute-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.hardLink = hardLink;
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Places a copy of every source at its target, replacing what is there.
+     */
+    public void copyAll(List<Transfer> transfers) throws IOException, InterruptedException {
+        List<Callable<Void>> tasks = new ArrayList<>(transfers.size());
+        for (Transfer transfer : transfers) {
+            tasks.add(() -> {
+                copy(transfer.getSource(), transfer.getTarget());
+                return null;
+            });
+        }
+        invokeAll(tasks);
+    }
+
+    public void moveAll(List<Transfer> transfers) throws IOException, InterruptedException {
+        List<Callable<Void>> tasks = new ArrayList<>(transfers.size());
+        for (Transfer transfer : transfers) {
+            tasks.add(() -> {
+                move(transfer.getSource(), transfer.getTarget());
+                return null;
+            });
+        }
+        invokeAll(tasks);
+    }
+
+    /**
+     * Extracts each bundle (source) into its directory (target) and returns
+     * the extracted files per bundle, in the order of {@code bundles}.
+     */
+    public List<List<Path>> extractAll(List<Transfer> bundles, Pattern entryPattern) throws IOException, InterruptedException {
+        List<Callable<List<Path>>> tasks = new ArrayList<>(bundles.size());
+        for (Transfer bundle : bundles) {
+            tasks.add(() -> CP58BundleReader.extract(bundle.getSource(), bundle.getTarget(), entryPattern));
+        }
+        return invokeAll(tasks);
+    }
+
+    private void copy(Path source, Path target) throws IOException {
+        if (hardLink) {
+            try {
+                Files.deleteIfExists(target);
+                Files.createLink(target, source);
+                return;
+            } catch (UnsupportedOperationException | FileSystemException e) {
+                log.debug("Unable to link " + target + ", copying instead", e);
+            }
+        }
+        Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            // Source and target are on different file systems
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private <T> List<T> invokeAll(List<Callable<T>> tasks) throws IOException, InterruptedException {
+        List<Future<T>> futures = executor.invokeAll(tasks);
+        List<T> results = new ArrayList<>(futures.size());
+        IOException failure = null;
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                IOException exception = cause instanceof IOException ? (IOException) cause : new IOException(cause);
+                if (failure == null) {
+                    failure = exception;
+                } else {
+                    failure.addSuppressed(exception);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+
+    public static class Transfer {
+        private final Path source;
+        private final Path target;
+
+        public Transfer(Path source, Path target) {
+            this.source = source;
+            this.target = target;
+        }
+
+        public Path getSource() {
+            return source;
+        }
+
+        public Path getTarget() {
+            return target;
+        }
+    }
+}
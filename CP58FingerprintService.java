@@ -0,0 +1,83 @@
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Change detection for CP58 generation. A recipient's fingerprint is a hash of
+ * its report parameters and the compiled template version, so a recipient is
+ * rendered again only when its figures or the template change.
+ */
+@Component
+public class CP58FingerprintService {
+
+    private final CommissionCP58FingerprintDAO commissionCP58FingerprintDAO;
+    private final CP58BatchWriteDAO cp58BatchWriteDAO;
+
+    public CP58FingerprintService(CommissionCP58FingerprintDAO commissionCP58FingerprintDAO,
+                                  CP58BatchWriteDAO cp58BatchWriteDAO) {
+        this.commissionCP58FingerprintDAO = commissionCP58FingerprintDAO;
+        this.cp58BatchWriteDAO = cp58BatchWriteDAO;
+    }
+
+    public static String key(Object recipientType, String recipientCode) {
+        return recipientType + ":" + recipientCode;
+    }
+
+    public Map<String, CommissionCP58Fingerprint> findByYears(int years) {
+        Map<String, CommissionCP58Fingerprint> fingerprints = new HashMap<>();
+        for (CommissionCP58Fingerprint fingerprint : commissionCP58FingerprintDAO.findByYears(years)) {
+            fingerprints.put(key(fingerprint.getRecipientType(), fingerprint.getRecipientCode()), fingerprint);
+        }
+        return fingerprints;
+    }
+
+    public String fingerprint(Map<String, Object> parameters, String templateHash) {
+        StringBuilder content = new StringBuilder(templateHash);
+        // Sorted so the hash does not depend on map iteration order
+        for (Map.Entry<String, Object> entry : new TreeMap<>(parameters).entrySet()) {
+            content.append('\n').append(entry.getKey()).append('=').append(entry.getValue());
+        }
+
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Records the fingerprints of recipients that were rendered and uploaded.
+     */
+    public void saveAll(Map<String, CommissionCP58Fingerprint> known, List<CP58GenerationResult.Success> successes, int years) {
+        LocalDateTime now = LocalDateTime.now();
+        List<CommissionCP58Fingerprint> changed = new ArrayList<>(successes.size());
+
+        for (CP58GenerationResult.Success success : successes) {
+            CommissionCP58Fingerprint fingerprint = known.get(key(success.getType(), success.getCode()));
+            if (fingerprint == null) {
+                fingerprint = new CommissionCP58Fingerprint();
+                fingerprint.setRecipientType(CommissionReceiverType.valueOf(success.getType()));
+                fingerprint.setRecipientCode(success.getCode());
+                fingerprint.setYears(years);
+                known.put(key(success.getType(), success.getCode()), fingerprint);
+            }
+            fingerprint.setFingerprint(success.getFingerprint());
+            fingerprint.setUpdatedAt(now);
+            changed.add(fingerprint);
+        }
+        cp58BatchWriteDAO.saveAll(changed);
+    }
+}
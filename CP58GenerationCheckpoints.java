@@ -0,0 +1,235 @@
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates, claims and advances the {@link CommissionCP58Checkpoint} shards of
+ * a generation run. With {@code cp58.sharding.enabled} every type is split
+ * into {@code cp58.sharding.shard-count} shards that any node can claim for
+ * {@code cp58.sharding.lease-ms}; the lease is extended with every chunk, so
+ * it must outlast the rendering of one chunk. Each update is its own short
+ * transaction, committed right after the chunk it covers.
+ */
+@Slf4j
+@Component
+public class CP58GenerationCheckpoints {
+
+    private final CommissionCP58CheckpointDAO commissionCP58CheckpointDAO;
+    private final boolean shardingEnabled;
+    private final int shardCount;
+    private final long leaseMillis;
+    private final String nodeId;
+    private final long pollIntervalMillis;
+    private final int localWorkers;
+
+    public CP58GenerationCheckpoints(CommissionCP58CheckpointDAO commissionCP58CheckpointDAO,
+                                     @Value("${cp58.sharding.enabled:false}") boolean shardingEnabled,
+                                     @Value("${cp58.sharding.shard-count:8}") int shardCount,
+                                     @Value("${cp58.sharding.lease-ms:300000}") long leaseMillis,
+                                     @Value("${cp58.sharding.node-id:}") String nodeId,
+                                     @Value("${cp58.sharding.poll-interval-ms:10000}") long pollIntervalMillis,
+                                     @Value("${cp58.sharding.local-workers:0}") int localWorkers) {
+        this.commissionCP58CheckpointDAO = commissionCP58CheckpointDAO;
+        this.shardingEnabled = shardingEnabled;
+        this.shardCount = shardingEnabled ? Math.max(1, shardCount) : 1;
+        this.leaseMillis = leaseMillis;
+        this.nodeId = nodeId.isEmpty() ? defaultNodeId() : nodeId;
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.localWorkers = shardingEnabled ? Math.max(0, localWorkers) : 0;
+    }
+
+    public boolean isShardingEnabled() {
+        return shardingEnabled;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Extra in-process workers the node starting a run adds, each claiming
+     * shards under its own worker name. Meant for trying sharding out on one
+     * machine against one database.
+     */
+    public int getLocalWorkers() {
+        return localWorkers;
+    }
+
+    /**
+     * Returns {@code true} once no shard of {@code years} is open; otherwise
+     * waits one poll interval and returns {@code false}.
+     */
+    public boolean awaitFinished(int years) throws InterruptedException {
+        for (CommissionCP58Checkpoint checkpoint : commissionCP58CheckpointDAO.findByYears(years)) {
+            if (checkpoint.getStatus() == CommissionCP58Checkpoint.Status.IN_PROGRESS) {
+                TimeUnit.MILLISECONDS.sleep(pollIntervalMillis);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Makes sure every shard of {@code types} exists for {@code years}. Shards
+     * left by an unfinished run keep their checkpoint, failed ones are opened
+     * again, and with {@code reset} all of them start from the beginning.
+     * Without sharding this node is the only worker, so stale leases from a
+     * crashed run are dropped instead of waiting for them to expire. Every
+     * shard counts its progress towards {@code runId} from now on.
+     */
+    public List<CommissionCP58Checkpoint> prepare(int years, CommissionReceiverType[] types, boolean reset, boolean forceFull,
+                                                  String runId) {
+        List<CommissionCP58Checkpoint> previous = commissionCP58CheckpointDAO.findByYears(years);
+        for (CommissionCP58Checkpoint checkpoint : previous) {
+            if (!reset && checkpoint.getShardCount() != shardCount) {
+                // The rows of each shard changed with the shard count, so the old checkpoints no longer apply
+                log.warn("CP58 shard count changed from " + checkpoint.getShardCount() + " to " + shardCount
+                        + ", starting " + years + " from the beginning");
+                reset = true;
+            }
+        }
+        if (reset) {
+            commissionCP58CheckpointDAO.deleteAll(previous);
+            previous = new ArrayList<>();
+        }
+
+        Map<String, CommissionCP58Checkpoint> existing = new HashMap<>();
+        for (CommissionCP58Checkpoint checkpoint : previous) {
+            existing.put(checkpoint.getRecipientType() + "/" + checkpoint.getShardIndex(), checkpoint);
+        }
+
+        List<CommissionCP58Checkpoint> shards = new ArrayList<>();
+        for (CommissionReceiverType type : types) {
+            for (int shardIndex = 0; shardIndex < shardCount; shardIndex++) {
+                CommissionCP58Checkpoint checkpoint = existing.get(type + "/" + shardIndex);
+                if (checkpoint == null) {
+                    checkpoint = newCheckpoint(years, type, shardIndex, shardCount);
+                } else {
+                    log.info("Resuming CP58 " + type + " shard " + shardIndex + " after id " + checkpoint.getLastCp58Id()
+                            + " (" + checkpoint.getStatus() + ")");
+                    if (checkpoint.getStatus() == CommissionCP58Checkpoint.Status.FAILED) {
+                        checkpoint.setStatus(CommissionCP58Checkpoint.Status.IN_PROGRESS);
+                    }
+                    if (!shardingEnabled) {
+                        checkpoint.setOwner(null);
+                        checkpoint.setLeaseExpiresAt(null);
+                    }
+                }
+                checkpoint.setForceFull(forceFull);
+                checkpoint.setRunId(runId);
+                checkpoint.setUpdatedAt(LocalDateTime.now());
+                shards.add(commissionCP58CheckpointDAO.save(checkpoint));
+            }
+        }
+        return shards;
+    }
+
+    /**
+     * Checkpoints that live only for this run, used when progress cannot be
+     * committed per chunk.
+     */
+    public List<CommissionCP58Checkpoint> createTransient(int years, CommissionReceiverType[] types, boolean forceFull,
+                                                          String runId) {
+        List<CommissionCP58Checkpoint> shards = new ArrayList<>(types.length);
+        for (CommissionReceiverType type : types) {
+            CommissionCP58Checkpoint checkpoint = newCheckpoint(years, type, 0, 1);
+            checkpoint.setForceFull(forceFull);
+            checkpoint.setRunId(runId);
+            shards.add(checkpoint);
+        }
+        return shards;
+    }
+
+    /**
+     * Claims the next open shard of {@code years} whose lease is free, or
+     * returns {@code null} when there is none. The lease is held under a
+     * token of {@code worker} and a random part that is new for every claim,
+     * so a worker that lost its lease cannot go on committing next to the
+     * one that claimed the shard after it, even when both run on this node.
+     */
+    public CommissionCP58Checkpoint claim(int years, String worker) {
+        String owner = worker + "/" + UUID.randomUUID();
+        LocalDateTime now = LocalDateTime.now();
+        for (CommissionCP58Checkpoint checkpoint : commissionCP58CheckpointDAO.findClaimable(
+                years, CommissionCP58Checkpoint.Status.IN_PROGRESS, now)) {
+            LocalDateTime leaseExpiresAt = now.plusNanos(TimeUnit.MILLISECONDS.toNanos(leaseMillis));
+            if (commissionCP58CheckpointDAO.claim(checkpoint.getId(), owner, leaseExpiresAt, now,
+                    CommissionCP58Checkpoint.Status.IN_PROGRESS) == 1) {
+                checkpoint.setOwner(owner);
+                checkpoint.setLeaseExpiresAt(leaseExpiresAt);
+                log.info(owner + " claimed CP58 " + checkpoint.getRecipientType() + " shard " + checkpoint.getShardIndex()
+                        + "/" + checkpoint.getShardCount());
+                return checkpoint;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Records progress and extends the lease. Returns {@code false} when the
+     * lease was lost, in which case the caller must stop working on the shard.
+     */
+    public boolean advance(CommissionCP58Checkpoint checkpoint, long lastCp58Id) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime leaseExpiresAt = now.plusNanos(TimeUnit.MILLISECONDS.toNanos(leaseMillis));
+        if (commissionCP58CheckpointDAO.advance(checkpoint.getId(), checkpoint.getOwner(), lastCp58Id, leaseExpiresAt, now) == 0) {
+            log.warn(checkpoint.getOwner() + " lost the lease on CP58 " + checkpoint.getRecipientType()
+                    + " shard " + checkpoint.getShardIndex());
+            return false;
+        }
+        checkpoint.setLastCp58Id(lastCp58Id);
+        checkpoint.setLeaseExpiresAt(leaseExpiresAt);
+        return true;
+    }
+
+    public void finish(CommissionCP58Checkpoint checkpoint, boolean failed) {
+        CommissionCP58Checkpoint.Status status = failed ? CommissionCP58Checkpoint.Status.FAILED : CommissionCP58Checkpoint.Status.COMPLETE;
+        if (commissionCP58CheckpointDAO.finish(checkpoint.getId(), checkpoint.getOwner(), status, LocalDateTime.now()) == 1) {
+            checkpoint.setStatus(status);
+            checkpoint.setOwner(null);
+        }
+    }
+
+    public List<CommissionCP58Checkpoint> findByYears(int years) {
+        return commissionCP58CheckpointDAO.findByYears(years);
+    }
+
+    /**
+     * Drops the checkpoints of {@code years} once a run has finished cleanly,
+     * so the next run starts from the beginning again.
+     */
+    public void clear(int years) {
+        commissionCP58CheckpointDAO.deleteAll(commissionCP58CheckpointDAO.findByYears(years));
+    }
+
+    private static CommissionCP58Checkpoint newCheckpoint(int years, CommissionReceiverType type, int shardIndex, int shardCount) {
+        CommissionCP58Checkpoint checkpoint = new CommissionCP58Checkpoint();
+        checkpoint.setYears(years);
+        checkpoint.setRecipientType(type);
+        checkpoint.setShardIndex(shardIndex);
+        checkpoint.setShardCount(shardCount);
+        checkpoint.setLastCp58Id(0L);
+        checkpoint.setStatus(CommissionCP58Checkpoint.Status.IN_PROGRESS);
+        return checkpoint;
+    }
+
+    private static String defaultNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            host = "cp58";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
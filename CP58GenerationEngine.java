@@ -0,0 +1,87 @@
+import lombok.extern.slf4j.Slf4j;
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JasperReport;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Opens {@link CP58GenerationPipeline}s sized from configuration.
+ * <ul>
+ *     <li>{@code cp58.generation.workers} - fill and export workers; {@code 1} runs every stage on the calling thread</li>
+ *     <li>{@code cp58.generation.upload-workers} - SFTP upload workers, defaults to the worker count</li>
+ *     <li>{@code cp58.generation.queue-capacity} - pending items allowed in front of each stage</li>
+ *     <li>{@code cp58.output.mode} - {@code files} uploads one file per recipient and format,
+ *     {@code bundle} one zip per recipient type and format</li>
+ *     <li>{@code cp58.fill.mode} - {@code per-recipient} fills the parameter template once per recipient,
+ *     {@code batch} fills up to {@code cp58.fill.batch-size} recipients at a time through
+ *     {@code cp58.fill.batch-template}, a template reading {@link CP58ReportRow} fields with one recipient per page</li>
+ * </ul>
+ */
+@Slf4j
+@Component
+public class CP58GenerationEngine {
+
+    public static final String OUTPUT_MODE_BUNDLE = "bundle";
+    public static final String FILL_MODE_BATCH = "batch";
+
+    private final CP58ReportRenderer cp58ReportRenderer;
+    private final CP58SftpUploader cp58SftpUploader;
+    private final CP58Metrics cp58Metrics;
+    private final CP58TemplateCache cp58TemplateCache;
+    private final boolean bundleOutput;
+    private final boolean batchFill;
+    private final String batchTemplateName;
+    private final int batchSize;
+    private final int workers;
+    private final int uploadWorkers;
+    private final int queueCapacity;
+
+    public CP58GenerationEngine(CP58ReportRenderer cp58ReportRenderer, CP58SftpUploader cp58SftpUploader, CP58Metrics cp58Metrics,
+                                CP58TemplateCache cp58TemplateCache,
+                                @Value("${cp58.output.mode:files}") String outputMode,
+                                @Value("${cp58.fill.mode:per-recipient}") String fillMode,
+                                @Value("${cp58.fill.batch-template:CP58_BATCH.jrxml}") String batchTemplateName,
+                                @Value("${cp58.fill.batch-size:200}") int batchSize,
+                                @Value("${cp58.generation.workers:1}") int workers,
+                                @Value("${cp58.generation.upload-workers:0}") int uploadWorkers,
+                                @Value("${cp58.generation.queue-capacity:64}") int queueCapacity) {
+        this.cp58ReportRenderer = cp58ReportRenderer;
+        this.cp58SftpUploader = cp58SftpUploader;
+        this.cp58Metrics = cp58Metrics;
+        this.cp58TemplateCache = cp58TemplateCache;
+        this.bundleOutput = OUTPUT_MODE_BUNDLE.equalsIgnoreCase(outputMode);
+        this.batchFill = FILL_MODE_BATCH.equalsIgnoreCase(fillMode);
+        this.batchTemplateName = batchTemplateName;
+        this.batchSize = Math.max(1, batchSize);
+        this.workers = Math.max(1, workers);
+        this.uploadWorkers = uploadWorkers > 0 ? uploadWorkers : this.workers;
+        this.queueCapacity = Math.max(1, queueCapacity);
+    }
+
+    public boolean isBundleOutput() {
+        return bundleOutput;
+    }
+
+    public CP58GenerationPipeline open(JasperReport jasperReport) {
+        CP58BundleSet bundles = bundleOutput ? new CP58BundleSet(cp58SftpUploader) : null;
+        JasperReport batchReport = batchFill ? loadBatchReport() : null;
+        if (workers == 1) {
+            return new CP58GenerationPipeline(cp58ReportRenderer, cp58Metrics, jasperReport, batchReport, batchSize,
+                    bundles, 0, 0, 0, queueCapacity);
+        }
+        return new CP58GenerationPipeline(cp58ReportRenderer, cp58Metrics, jasperReport, batchReport, batchSize,
+                bundles, workers, workers, uploadWorkers, queueCapacity);
+    }
+
+    private JasperReport loadBatchReport() {
+        String templatePath = cp58TemplateCache.buildTemplatePath(batchTemplateName);
+        try {
+            return cp58TemplateCache.getReport(templatePath);
+        } catch (IOException | JRException e) {
+            log.warn("Unable to load CP58 batch template " + templatePath + ", filling recipients one by one", e);
+            return null;
+        }
+    }
+}
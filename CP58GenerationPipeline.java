@@ -0,0 +1,371 @@
+import lombok.extern.slf4j.Slf4j;
+import net.sf.jasperreports.engine.JasperPrint;
+import net.sf.jasperreports.engine.JasperReport;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Staged CP58 generation for one run: the caller submits recipients (query
+ * stage), which then flow through fill, export and upload stages. Each stage
+ * has its own workers and a bounded number of pending items, so a slow stage
+ * blocks the one in front of it and heap usage follows the queue capacity
+ * rather than the number of recipients.
+ * <p>
+ * A stage with no workers runs on the thread that hands it work, which turns
+ * the whole pipeline into the sequential mode.
+ * <p>
+ * With a batch report, submitted recipients are collected into batches that
+ * are filled in one pass each and split back into one document per recipient
+ * before export. A batch whose fill fails or whose page count does not match
+ * is filled again one recipient at a time.
+ */
+@Slf4j
+public class CP58GenerationPipeline implements AutoCloseable {
+
+    private final CP58ReportRenderer cp58ReportRenderer;
+    private final CP58Metrics cp58Metrics;
+    private final JasperReport jasperReport;
+    private final JasperReport batchReport;
+    private final int batchSize;
+    private List<Recipient> pendingBatch = new ArrayList<>();
+    private final CP58GenerationResult result = new CP58GenerationResult();
+    private final Stage fillStage;
+    private final Stage exportStage;
+    private final Stage uploadStage;
+    private final CP58BundleSet bundles;
+    private boolean completed;
+
+    /**
+     * @param batchReport when not null, recipients are filled {@code batchSize}
+     *                    at a time through this template
+     * @param bundles     when not null, documents are added to per-type bundles
+     *                    instead of being uploaded one file each
+     */
+    CP58GenerationPipeline(CP58ReportRenderer cp58ReportRenderer, CP58Metrics cp58Metrics, JasperReport jasperReport,
+                           JasperReport batchReport, int batchSize, CP58BundleSet bundles,
+                           int fillWorkers, int exportWorkers, int uploadWorkers, int queueCapacity) {
+        this.cp58ReportRenderer = cp58ReportRenderer;
+        this.cp58Metrics = cp58Metrics;
+        this.jasperReport = jasperReport;
+        this.batchReport = batchReport;
+        this.batchSize = batchSize;
+        this.bundles = bundles;
+        this.fillStage = new Stage("fill", fillWorkers, queueCapacity, cp58Metrics.queueDepth("fill"));
+        this.exportStage = new Stage("export", exportWorkers, queueCapacity, cp58Metrics.queueDepth("export"));
+        this.uploadStage = new Stage("upload", uploadWorkers, queueCapacity, cp58Metrics.queueDepth("upload"));
+    }
+
+    /**
+     * Queues one recipient, blocking while the fill stage is full. The
+     * fingerprint is reported back through the result once all of the
+     * recipient's files are uploaded. In batch mode the recipient waits for
+     * its batch to fill up, or for {@link #drain()} or
+     * {@link #awaitCompletion()}.
+     */
+    public void submit(Map<String, Object> parameters, String fingerprint) throws InterruptedException {
+        Recipient recipient = new Recipient(parameters, fingerprint, cp58ReportRenderer.getExporters().size());
+        if (batchReport == null) {
+            fillStage.submit(() -> fill(recipient));
+            return;
+        }
+        pendingBatch.add(recipient);
+        if (pendingBatch.size() >= batchSize) {
+            flushBatch();
+        }
+    }
+
+    public CP58GenerationResult getResult() {
+        return result;
+    }
+
+    /**
+     * Waits until every recipient submitted so far is uploaded or failed,
+     * keeping the workers for further submissions. Bundles stay open.
+     */
+    public void drain() throws InterruptedException {
+        flushBatch();
+        // Each stage only feeds the next one, so waiting for them in order is enough
+        fillStage.awaitIdle();
+        exportStage.awaitIdle();
+        uploadStage.awaitIdle();
+    }
+
+    /**
+     * Waits for every submitted recipient to be uploaded or failed.
+     */
+    public CP58GenerationResult awaitCompletion() throws InterruptedException {
+        if (!completed) {
+            flushBatch();
+            // Each stage only feeds the next one, so draining them in order is enough
+            fillStage.shutdownAndAwait();
+            exportStage.shutdownAndAwait();
+            uploadStage.shutdownAndAwait();
+            if (bundles != null) {
+                for (CommissionReceiverType failedType : bundles.closeAll()) {
+                    result.discardSuccesses(failedType);
+                    result.recordFailure(failedType, "bundle", new IOException("CP58 bundle upload failed for " + failedType));
+                }
+            }
+            completed = true;
+        }
+        return result;
+    }
+
+    @Override
+    public void close() {
+        if (!completed) {
+            try {
+                awaitCompletion();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fillStage.shutdownNow();
+                exportStage.shutdownNow();
+                uploadStage.shutdownNow();
+                if (bundles != null) {
+                    bundles.abortAll();
+                }
+            }
+        }
+    }
+
+    private void fill(Recipient recipient) {
+        try {
+            JasperPrint jasperPrint = cp58ReportRenderer.fill(jasperReport, recipient.parameters);
+            exportStage.submit(() -> export(recipient, jasperPrint));
+        } catch (Exception e) {
+            recipient.fail(e);
+        }
+    }
+
+    private void flushBatch() throws InterruptedException {
+        if (pendingBatch.isEmpty()) {
+            return;
+        }
+        List<Recipient> batch = pendingBatch;
+        pendingBatch = new ArrayList<>(batchSize);
+        fillStage.submit(() -> fillBatch(batch));
+    }
+
+    private void fillBatch(List<Recipient> batch) {
+        List<CP58ReportRow> rows = new ArrayList<>(batch.size());
+        for (Recipient recipient : batch) {
+            rows.add(CP58ReportRow.of(recipient.parameters));
+        }
+
+        List<JasperPrint> jasperPrints = null;
+        try {
+            jasperPrints = cp58ReportRenderer.fillBatch(batchReport, rows);
+        } catch (Exception e) {
+            log.warn("Batch fill of " + batch.size() + " CP58 recipients failed, filling them one by one", e);
+        }
+        if (jasperPrints == null) {
+            for (Recipient recipient : batch) {
+                fill(recipient);
+            }
+            return;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            Recipient recipient = batch.get(i);
+            JasperPrint jasperPrint = jasperPrints.get(i);
+            try {
+                exportStage.submit(() -> export(recipient, jasperPrint));
+            } catch (Exception e) {
+                recipient.fail(e);
+            }
+        }
+    }
+
+    private void export(Recipient recipient, JasperPrint jasperPrint) {
+        List<CP58ReportExporter> exporters = cp58ReportRenderer.getExporters();
+        for (CP58ReportExporter exporter : exporters) {
+            if (recipient.failed.get()) {
+                return;
+            }
+            String outputFilePath;
+            try {
+                outputFilePath = cp58ReportRenderer.getOutputFilePath(exporter, recipient.parameters);
+            } catch (RuntimeException e) {
+                recipient.fail(e);
+                return;
+            }
+
+            if (bundles == null && cp58ReportRenderer.isStreamingExport()) {
+                // Export and upload in one pass straight into the SFTP channel
+                try {
+                    cp58ReportRenderer.exportToSftp(exporter, jasperPrint, outputFilePath);
+                    recipient.fileDone(outputFilePath);
+                } catch (Exception e) {
+                    recipient.fail(e);
+                }
+                continue;
+            }
+
+            CP58BufferPool.Buffer buffer;
+            try {
+                buffer = cp58ReportRenderer.export(exporter, jasperPrint);
+            } catch (Exception e) {
+                recipient.fail(e);
+                continue;
+            }
+            try {
+                uploadStage.submit(() -> upload(recipient, exporter, outputFilePath, buffer));
+            } catch (Exception e) {
+                cp58ReportRenderer.release(buffer);
+                recipient.fail(e);
+            }
+        }
+    }
+
+    private void upload(Recipient recipient, CP58ReportExporter exporter, String outputFilePath, CP58BufferPool.Buffer buffer) {
+        try {
+            if (recipient.failed.get()) {
+                return;
+            }
+            if (bundles != null) {
+                String entryName = outputFilePath.substring(outputFilePath.lastIndexOf('/') + 1);
+                bundles.get((CommissionReceiverType) recipient.parameters.get("type"), exporter)
+                        .add((String) recipient.parameters.get("code"), entryName, buffer.toInputStream());
+            } else {
+                cp58ReportRenderer.upload(outputFilePath, buffer);
+            }
+            recipient.fileDone(outputFilePath);
+        } catch (Exception e) {
+            recipient.fail(e);
+        } finally {
+            cp58ReportRenderer.release(buffer);
+        }
+    }
+
+    private class Recipient {
+        private final Map<String, Object> parameters;
+        private final String fingerprint;
+        private final AtomicInteger pendingFiles;
+        private final AtomicBoolean failed = new AtomicBoolean();
+        private final List<String> files = Collections.synchronizedList(new ArrayList<>());
+        private final long submittedAt = cp58Metrics.start();
+
+        private Recipient(Map<String, Object> parameters, String fingerprint, int files) {
+            this.parameters = parameters;
+            this.fingerprint = fingerprint;
+            this.pendingFiles = new AtomicInteger(files);
+        }
+
+        private void fileDone(String outputFilePath) {
+            files.add(outputFilePath);
+            if (pendingFiles.decrementAndGet() == 0 && !failed.get()) {
+                cp58Metrics.stop(CP58Metrics.RECIPIENT, submittedAt);
+                result.recordSuccess(parameters.get("type"), (String) parameters.get("code"), fingerprint, files);
+            }
+        }
+
+        private void fail(Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            if (failed.compareAndSet(false, true)) {
+                log.error("Failed to generate CP58 for " + parameters.get("type") + " " + parameters.get("code"), e);
+                result.recordFailure(parameters.get("type"), (String) parameters.get("code"), e);
+            }
+        }
+    }
+
+    private static class Stage {
+        private final String name;
+        private final ExecutorService executor;
+        private final Semaphore permits;
+        private final int capacity;
+        private final AtomicInteger depth;
+
+        private Stage(String name, int workers, int queueCapacity, AtomicInteger depth) {
+            this.name = name;
+            this.depth = depth;
+            if (workers > 0) {
+                this.executor = Executors.newFixedThreadPool(workers, new StageThreadFactory(name));
+                this.capacity = workers + queueCapacity;
+                this.permits = new Semaphore(capacity);
+            } else {
+                this.executor = null;
+                this.permits = null;
+                this.capacity = 0;
+            }
+        }
+
+        private void submit(Runnable task) throws InterruptedException {
+            if (executor == null) {
+                task.run();
+                return;
+            }
+            permits.acquire();
+            depth.incrementAndGet();
+            try {
+                executor.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        depth.decrementAndGet();
+                        permits.release();
+                    }
+                });
+            } catch (RuntimeException e) {
+                depth.decrementAndGet();
+                permits.release();
+                throw e;
+            }
+        }
+
+        /**
+         * Returns once no task is queued or running, by taking every permit.
+         */
+        private void awaitIdle() throws InterruptedException {
+            if (executor == null) {
+                return;
+            }
+            permits.acquire(capacity);
+            permits.release(capacity);
+        }
+
+        private void shutdownAndAwait() throws InterruptedException {
+            if (executor == null) {
+                return;
+            }
+            executor.shutdown();
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                log.info("Waiting for CP58 " + name + " stage to drain");
+            }
+        }
+
+        private void shutdownNow() {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private static class StageThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        private StageThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "cp58-" + name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Outcome of a CP58 generation run. A failing recipient is recorded here
+ * instead of aborting the recipients that follow it.
+ */
+public class CP58GenerationResult {
+
+    private static final int SUMMARY_LIMIT = 10;
+
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final List<Success> successes = Collections.synchronizedList(new ArrayList<>());
+    private final List<Failure> failures = Collections.synchronizedList(new ArrayList<>());
+
+    public void recordSuccess(Object type, String code, String fingerprint, List<String> files) {
+        successes.add(new Success(String.valueOf(type), code, fingerprint, files));
+    }
+
+    /**
+     * Drops the successes of one recipient type, e.g. when the bundle holding
+     * their documents could not be uploaded.
+     */
+    public void discardSuccesses(Object type) {
+        String typeName = String.valueOf(type);
+        successes.removeIf(success -> success.getType().equals(typeName));
+    }
+
+    public void recordSkipped() {
+        skipped.incrementAndGet();
+    }
+
+    public void recordFailure(Object type, String code, Throwable cause) {
+        failures.add(new Failure(String.valueOf(type), code, cause));
+    }
+
+    public int getSucceeded() {
+        return successes.size();
+    }
+
+    public int getSkipped() {
+        return skipped.get();
+    }
+
+    public List<Success> getSuccesses() {
+        synchronized (successes) {
+            return new ArrayList<>(successes);
+        }
+    }
+
+    /**
+     * Successes recorded after the first {@code mark} ones, e.g. those of the
+     * chunk submitted since {@link #getSucceeded()} returned {@code mark}.
+     */
+    public List<Success> getSuccessesSince(int mark) {
+        synchronized (successes) {
+            return new ArrayList<>(successes.subList(mark, successes.size()));
+        }
+    }
+
+    public int getFailureCount() {
+        return failures.size();
+    }
+
+    public List<Failure> getFailures() {
+        synchronized (failures) {
+            return new ArrayList<>(failures);
+        }
+    }
+
+    public boolean hasFailures() {
+        return !failures.isEmpty();
+    }
+
+    public String getFailureSummary() {
+        List<Failure> snapshot = getFailures();
+        StringBuilder summary = new StringBuilder();
+        summary.append(snapshot.size()).append(" of ").append(snapshot.size() + getSucceeded())
+                .append(" recipients failed");
+        for (int i = 0; i < snapshot.size() && i < SUMMARY_LIMIT; i++) {
+            Failure failure = snapshot.get(i);
+            summary.append(i == 0 ? ": " : ", ")
+                    .append(failure.getType()).append('/').append(failure.getCode())
+                    .append(" (").append(failure.getCause()).append(')');
+        }
+        if (snapshot.size() > SUMMARY_LIMIT) {
+            summary.append(", ...");
+        }
+        return summary.toString();
+    }
+
+    public static class Success {
+        private final String type;
+        private final String code;
+        private final String fingerprint;
+        private final List<String> files;
+
+        public Success(String type, String code, String fingerprint, List<String> files) {
+            this.type = type;
+            this.code = code;
+            this.fingerprint = fingerprint;
+            this.files = files;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getCode() {
+            return code;
+        }
+
+        public String getFingerprint() {
+            return fingerprint;
+        }
+
+        /**
+         * Remote paths of the files written for the recipient, one per format.
+         */
+        public List<String> getFiles() {
+            return files;
+        }
+    }
+
+    public static class Failure {
+        private final String type;
+        private final String code;
+        private final Throwable cause;
+
+        public Failure(String type, String code, Throwable cause) {
+            this.type = type;
+            this.code = code;
+            this.cause = cause;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getCode() {
+            return code;
+        }
+
+        public Throwable getCause() {
+            return cause;
+        }
+    }
+}
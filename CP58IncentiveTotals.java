@@ -0,0 +1,100 @@
+import java.math.BigDecimal;
+
+/**
+ * Incentive totals of one CP58 recipient, summed from its
+ * {@link ConsumeOCBCGiroFile} rows. Missing amounts are treated as zero.
+ */
+public class CP58IncentiveTotals {
+
+    public static final CP58IncentiveTotals ZERO = new CP58IncentiveTotals(null, null, null, null, null, null);
+
+    private final BigDecimal referralFee;
+    private final BigDecimal vehicleIncentive;
+    private final BigDecimal houseIncentive;
+    private final BigDecimal tourTravelIncentive;
+    private final BigDecimal others;
+    private final BigDecimal trainingIncentive;
+
+    public CP58IncentiveTotals(BigDecimal referralFee, BigDecimal vehicleIncentive, BigDecimal houseIncentive,
+                               BigDecimal tourTravelIncentive, BigDecimal others, BigDecimal trainingIncentive) {
+        this.referralFee = orZero(referralFee);
+        this.vehicleIncentive = orZero(vehicleIncentive);
+        this.houseIncentive = orZero(houseIncentive);
+        this.tourTravelIncentive = orZero(tourTravelIncentive);
+        this.others = orZero(others);
+        this.trainingIncentive = orZero(trainingIncentive);
+    }
+
+    /**
+     * Totals currently stored on a CP58 row.
+     */
+    public static CP58IncentiveTotals of(CommissionCP58 commissionCP58) {
+        return new CP58IncentiveTotals(
+                commissionCP58.getTotalReferralAmount(),
+                commissionCP58.getTotalVehicleIncentive(),
+                commissionCP58.getTotalHouseIncentive(),
+                commissionCP58.getTotalTourTravelPackageIncentive(),
+                commissionCP58.getTotalOtherIncentive(),
+                commissionCP58.getTotalTrainingDevelopmentIncentive());
+    }
+
+    public CP58IncentiveTotals add(CP58IncentiveTotals other) {
+        return new CP58IncentiveTotals(
+                referralFee.add(other.referralFee),
+                vehicleIncentive.add(other.vehicleIncentive),
+                houseIncentive.add(other.houseIncentive),
+                tourTravelIncentive.add(other.tourTravelIncentive),
+                others.add(other.others),
+                trainingIncentive.add(other.trainingIncentive));
+    }
+
+    /**
+     * Compares amounts ignoring scale, so 10 and 10.00 are equal.
+     */
+    public boolean matches(CP58IncentiveTotals other) {
+        return referralFee.compareTo(other.referralFee) == 0
+                && vehicleIncentive.compareTo(other.vehicleIncentive) == 0
+                && houseIncentive.compareTo(other.houseIncentive) == 0
+                && tourTravelIncentive.compareTo(other.tourTravelIncentive) == 0
+                && others.compareTo(other.others) == 0
+                && trainingIncentive.compareTo(other.trainingIncentive) == 0;
+    }
+
+    public BigDecimal getReferralFee() {
+        return referralFee;
+    }
+
+    public BigDecimal getVehicleIncentive() {
+        return vehicleIncentive;
+    }
+
+    public BigDecimal getHouseIncentive() {
+        return houseIncentive;
+    }
+
+    public BigDecimal getTourTravelIncentive() {
+        return tourTravelIncentive;
+    }
+
+    public BigDecimal getOthers() {
+        return others;
+    }
+
+    public BigDecimal getTrainingIncentive() {
+        return trainingIncentive;
+    }
+
+    @Override
+    public String toString() {
+        return "CP58IncentiveTotals{referralFee=" + referralFee
+                + ", vehicleIncentive=" + vehicleIncentive
+                + ", houseIncentive=" + houseIncentive
+                + ", tourTravelIncentive=" + tourTravelIncentive
+                + ", others=" + others
+                + ", trainingIncentive=" + trainingIncentive + '}';
+    }
+
+    private static BigDecimal orZero(BigDecimal value) {
+        return value != null ? value : BigDecimal.ZERO;
+    }
+}
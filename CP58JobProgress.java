@@ -0,0 +1,124 @@
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Progress of one background CP58 job run as last written to its
+ * {@link CommissionCP58JobRun}, as returned by {@link CP58JobRunner}. The
+ * counts include the shards every node rendered for the run.
+ */
+public class CP58JobProgress {
+
+    private final String runId;
+    private final String jobName;
+    private final CommissionCP58JobRun.State state;
+    private final String node;
+    private final LocalDateTime submittedAt;
+    private final LocalDateTime startedAt;
+    private final LocalDateTime finishedAt;
+    private final long total;
+    private final long processed;
+    private final long failed;
+    private final String message;
+    private final String metricsSummary;
+
+    public CP58JobProgress(CommissionCP58JobRun run) {
+        this.runId = run.getRunId();
+        this.jobName = run.getJobName();
+        this.state = run.getState();
+        this.node = run.getNode();
+        this.submittedAt = run.getSubmittedAt();
+        this.startedAt = run.getStartedAt();
+        this.finishedAt = run.getFinishedAt();
+        this.total = run.getTotal();
+        this.processed = run.getProcessed();
+        this.failed = run.getFailed();
+        this.message = run.getMessage();
+        this.metricsSummary = run.getMetricsSummary();
+    }
+
+    public String getRunId() {
+        return runId;
+    }
+
+    public String getJobName() {
+        return jobName;
+    }
+
+    public CommissionCP58JobRun.State getState() {
+        return state;
+    }
+
+    /**
+     * Node the run was started on; shards may have been rendered elsewhere.
+     */
+    public String getNode() {
+        return node;
+    }
+
+    public LocalDateTime getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Per-stage counts and timings of the run on the node it was started
+     * on, see {@link CP58Metrics#summarySince}.
+     */
+    public String getMetricsSummary() {
+        return metricsSummary;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Recipients rendered or skipped as unchanged.
+     */
+    public long getProcessed() {
+        return processed;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public long getRemaining() {
+        return Math.max(0, total - processed - failed);
+    }
+
+    /**
+     * Recipients handled per second since the run started.
+     */
+    public double getThroughput() {
+        if (startedAt == null) {
+            return 0;
+        }
+        LocalDateTime end = finishedAt != null ? finishedAt : LocalDateTime.now();
+        double seconds = Duration.between(startedAt, end).toMillis() / 1000d;
+        return seconds <= 0 ? 0 : (processed + failed) / seconds;
+    }
+
+    /**
+     * Estimated time left at the current throughput, or {@code null} while
+     * there is nothing to base it on.
+     */
+    public Duration getEta() {
+        double throughput = getThroughput();
+        if (state != CommissionCP58JobRun.State.RUNNING || throughput <= 0) {
+            return null;
+        }
+        return Duration.ofMillis((long) (getRemaining() / throughput * 1000));
+    }
+}
@@ -0,0 +1,104 @@
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs CP58 generation and distribution in the background so a caller gets a
+ * run id back immediately and polls {@link #getProgress(String)}, on any
+ * node. Jobs run one at a time on a dedicated thread, since distribution
+ * works on what generation produced; submitting a job that is already queued
+ * or running on this node returns that run instead of starting another.
+ * Progress is kept in {@link CommissionCP58JobRun} through {@link CP58JobRuns};
+ * the CP58 job table is still updated by the service through
+ * {@link CommissionCP58JobHelper} when a run finishes.
+ */
+@Slf4j
+@Component
+public class CP58JobRunner {
+
+    public static final String JOB_GENERATE = "generate";
+    public static final String JOB_DISTRIBUTE = "distribute";
+
+    private final CP58Service cp58Service;
+    private final CP58JobRuns cp58JobRuns;
+    private final CP58GenerationCheckpoints cp58GenerationCheckpoints;
+    private final Map<String, String> activeRuns = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cp58-job");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public CP58JobRunner(CP58Service cp58Service, CP58JobRuns cp58JobRuns, CP58GenerationCheckpoints cp58GenerationCheckpoints) {
+        this.cp58Service = cp58Service;
+        this.cp58JobRuns = cp58JobRuns;
+        this.cp58GenerationCheckpoints = cp58GenerationCheckpoints;
+    }
+
+    public CP58JobProgress submitGeneration(boolean forceFull) {
+        return submit(JOB_GENERATE, runId -> cp58Service.generateCP58(forceFull, runId));
+    }
+
+    public CP58JobProgress submitDistribution() {
+        return submit(JOB_DISTRIBUTE, runId -> cp58Service.distributeCP58());
+    }
+
+    /**
+     * Progress of a run, or {@code null} when there is no such run.
+     */
+    public CP58JobProgress getProgress(String runId) {
+        return cp58JobRuns.find(runId);
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private synchronized CP58JobProgress submit(String jobName, Job job) {
+        String activeRunId = activeRuns.get(jobName);
+        if (activeRunId != null) {
+            CP58JobProgress active = cp58JobRuns.find(activeRunId);
+            log.info("CP58 " + jobName + " run " + activeRunId + " is already " + active.getState());
+            return active;
+        }
+
+        CP58JobProgress progress = cp58JobRuns.create(jobName);
+        activeRuns.put(jobName, progress.getRunId());
+        executor.execute(() -> run(job, jobName, progress.getRunId()));
+        log.info("Queued CP58 " + jobName + " run " + progress.getRunId());
+        return progress;
+    }
+
+    private void run(Job job, String jobName, String runId) {
+        CommissionCP58JobRun.State state;
+        try {
+            cp58JobRuns.start(runId, cp58GenerationCheckpoints.getNodeId());
+            GenericResponseVo response = job.run(runId);
+            if (Boolean.TRUE.equals(response.getSuccess())) {
+                state = CommissionCP58JobRun.State.COMPLETE;
+                cp58JobRuns.finish(runId, state, null);
+            } else {
+                state = CommissionCP58JobRun.State.FAILED;
+                cp58JobRuns.finish(runId, state, response.getMessage());
+            }
+        } catch (RuntimeException e) {
+            log.error("CP58 " + jobName + " run " + runId + " failed", e);
+            state = CommissionCP58JobRun.State.FAILED;
+            cp58JobRuns.finish(runId, state, e.getMessage());
+        } finally {
+            activeRuns.remove(jobName);
+        }
+        log.info("CP58 " + jobName + " run " + runId + " finished " + state);
+    }
+
+    @FunctionalInterface
+    private interface Job {
+        GenericResponseVo run(String runId);
+    }
+}
@@ -0,0 +1,93 @@
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Reads and updates the {@link CommissionCP58JobRun} of background CP58
+ * jobs. Every write is its own short update, so progress is visible to any
+ * node polling the run while it goes on. Calls with a {@code null} run id,
+ * as made by runs started directly on {@link CP58Service}, do nothing.
+ */
+@Component
+public class CP58JobRuns {
+
+    private static final int MAX_MESSAGE_LENGTH = 1000;
+    private static final int MAX_METRICS_SUMMARY_LENGTH = 4000;
+
+    private final CommissionCP58JobRunDAO commissionCP58JobRunDAO;
+
+    public CP58JobRuns(CommissionCP58JobRunDAO commissionCP58JobRunDAO) {
+        this.commissionCP58JobRunDAO = commissionCP58JobRunDAO;
+    }
+
+    public CP58JobProgress create(String jobName) {
+        CommissionCP58JobRun run = new CommissionCP58JobRun();
+        run.setRunId(UUID.randomUUID().toString());
+        run.setJobName(jobName);
+        run.setState(CommissionCP58JobRun.State.QUEUED);
+        run.setTotal(0L);
+        run.setProcessed(0L);
+        run.setFailed(0L);
+        run.setSubmittedAt(LocalDateTime.now());
+        return new CP58JobProgress(commissionCP58JobRunDAO.save(run));
+    }
+
+    public void start(String runId, String node) {
+        if (runId != null) {
+            commissionCP58JobRunDAO.start(runId, CommissionCP58JobRun.State.RUNNING, node, LocalDateTime.now());
+        }
+    }
+
+    /**
+     * Number of recipients the run still has to go through, set once it
+     * knows.
+     */
+    public void track(String runId, long total) {
+        if (runId != null) {
+            commissionCP58JobRunDAO.track(runId, total);
+        }
+    }
+
+    /**
+     * Adds the recipients of one committed chunk, by whichever worker
+     * rendered it.
+     */
+    public void addProgress(String runId, long processed, long failed) {
+        if (runId != null && (processed > 0 || failed > 0)) {
+            commissionCP58JobRunDAO.addProgress(runId, processed, failed);
+        }
+    }
+
+    /**
+     * Replaces the counts of a run that a single pipeline renders.
+     */
+    public void setProgress(String runId, long processed, long failed) {
+        if (runId != null) {
+            commissionCP58JobRunDAO.setProgress(runId, processed, failed);
+        }
+    }
+
+    public void recordMetricsSummary(String runId, String metricsSummary) {
+        if (runId != null) {
+            commissionCP58JobRunDAO.recordMetricsSummary(runId, truncate(metricsSummary, MAX_METRICS_SUMMARY_LENGTH));
+        }
+    }
+
+    public void finish(String runId, CommissionCP58JobRun.State state, String message) {
+        if (runId != null) {
+            commissionCP58JobRunDAO.finish(runId, state, truncate(message, MAX_MESSAGE_LENGTH), LocalDateTime.now());
+        }
+    }
+
+    /**
+     * Current progress of a run, or {@code null} when there is no such run.
+     */
+    public CP58JobProgress find(String runId) {
+        return commissionCP58JobRunDAO.findById(runId).map(CP58JobProgress::new).orElse(null);
+    }
+
+    private static String truncate(String value, int maxLength) {
+        return value != null && value.length() > maxLength ? value.substring(0, maxLength) : value;
+    }
+}
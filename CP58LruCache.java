@@ -0,0 +1,60 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Small thread-safe map that evicts the least recently used entry once it
+ * holds {@code maxSize} entries. Meant for memoising values that are cheap
+ * to recompute but looked up many times in a row, not as a general cache.
+ */
+public class CP58LruCache<K, V> {
+
+    private final Map<K, V> entries;
+
+    public CP58LruCache(int maxSize) {
+        int capacity = Math.max(1, maxSize);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Cached value of {@code key}, computing and storing it when absent. The
+     * value is computed outside the lock, so two threads may both compute it.
+     */
+    public V get(K key, Function<K, V> loader) {
+        V value;
+        synchronized (entries) {
+            value = entries.get(key);
+        }
+        if (value != null) {
+            return value;
+        }
+        value = loader.apply(key);
+        synchronized (entries) {
+            entries.put(key, value);
+        }
+        return value;
+    }
+
+    public void invalidate(K key) {
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+}
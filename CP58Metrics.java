@@ -0,0 +1,161 @@
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Timers, counters and queue gauges for the CP58 jobs, published through the
+ * application's {@link MeterRegistry}. Stage timers publish histograms so
+ * percentiles can be compared between runs; {@link #snapshot()} and
+ * {@link #summarySince(Snapshot)} turn the cumulative meters into a summary of
+ * a single run.
+ */
+@Component
+public class CP58Metrics {
+
+    public static final String GIRO_PROCESSING = "cp58.giro.processing";
+    public static final String PARAMETERS_BUILD = "cp58.parameters.build";
+    public static final String TEMPLATE_COMPILE = "cp58.template.compile";
+    public static final String FILL = "cp58.fill";
+    public static final String BATCH_FILL = "cp58.fill.batch";
+    public static final String EXPORT = "cp58.export";
+    public static final String UPLOAD = "cp58.upload";
+    public static final String DISTRIBUTION = "cp58.distribution";
+    /**
+     * Per recipient, from submission to the pipeline until its last file is
+     * uploaded, including any time spent queued.
+     */
+    public static final String RECIPIENT = "cp58.recipient";
+
+    private static final String UPLOAD_BYTES = "cp58.upload.bytes";
+    private static final String RECIPIENTS = "cp58.recipients";
+    private static final String DISTRIBUTED_FILES = "cp58.distribution.files";
+    private static final String QUEUE_DEPTH = "cp58.pipeline.queue.depth";
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> queueDepths = new ConcurrentHashMap<>();
+    private final DistributionSummary uploadBytes;
+
+    public CP58Metrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.uploadBytes = DistributionSummary.builder(UPLOAD_BYTES)
+                .baseUnit("bytes")
+                .description("Size of each CP58 file uploaded to SFTP")
+                .register(meterRegistry);
+    }
+
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records the time since {@code startNanos} under {@code stage}, with an
+     * optional tag value such as the export format.
+     */
+    public void stop(String stage, long startNanos) {
+        stop(stage, null, startNanos);
+    }
+
+    public void stop(String stage, String format, long startNanos) {
+        timer(stage, format).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordUpload(long startNanos, long bytes) {
+        stop(UPLOAD, startNanos);
+        uploadBytes.record(bytes);
+    }
+
+    public void recordRecipients(CP58GenerationResult result) {
+        counter(RECIPIENTS, "outcome", "rendered").increment(result.getSucceeded());
+        counter(RECIPIENTS, "outcome", "skipped").increment(result.getSkipped());
+        counter(RECIPIENTS, "outcome", "failed").increment(result.getFailureCount());
+    }
+
+    public void recordDistributedFiles(int files) {
+        counter(DISTRIBUTED_FILES, "outcome", "distributed").increment(files);
+    }
+
+    /**
+     * Live number of tasks queued or running in a pipeline stage, summed over
+     * the pipelines open at the moment.
+     */
+    public AtomicInteger queueDepth(String stage) {
+        return queueDepths.computeIfAbsent(stage, name -> {
+            AtomicInteger depth = new AtomicInteger();
+            Gauge.builder(QUEUE_DEPTH, depth, AtomicInteger::get)
+                    .tag("stage", name)
+                    .description("CP58 pipeline tasks queued or running")
+                    .register(meterRegistry);
+            return depth;
+        });
+    }
+
+    public Snapshot snapshot() {
+        Map<String, long[]> values = new LinkedHashMap<>();
+        for (Map.Entry<String, Timer> timer : timers.entrySet()) {
+            values.put(timer.getKey(), new long[]{timer.getValue().count(), (long) timer.getValue().totalTime(TimeUnit.NANOSECONDS)});
+        }
+        values.put(UPLOAD_BYTES, new long[]{uploadBytes.count(), (long) uploadBytes.totalAmount()});
+        return new Snapshot(values);
+    }
+
+    /**
+     * Count, total and mean of every stage since {@code before} was taken,
+     * e.g. {@code cp58.fill: 1200 in 340.2s (283.5ms avg)}.
+     */
+    public String summarySince(Snapshot before) {
+        StringBuilder summary = new StringBuilder();
+        for (Map.Entry<String, long[]> entry : snapshot().values.entrySet()) {
+            long[] previous = before.values.getOrDefault(entry.getKey(), new long[2]);
+            long count = entry.getValue()[0] - previous[0];
+            long total = entry.getValue()[1] - previous[1];
+            if (count == 0) {
+                continue;
+            }
+            if (summary.length() > 0) {
+                summary.append(", ");
+            }
+            if (UPLOAD_BYTES.equals(entry.getKey())) {
+                summary.append(entry.getKey()).append(": ").append(total).append(" bytes in ").append(count).append(" files");
+            } else {
+                summary.append(entry.getKey()).append(": ").append(count)
+                        .append(String.format(" in %.1fs (%.1fms avg)", total / 1e9, total / 1e6 / count));
+            }
+        }
+        return summary.toString();
+    }
+
+    private Timer timer(String stage, String format) {
+        String key = format == null ? stage : stage + "[" + format + "]";
+        return timers.computeIfAbsent(key, name -> {
+            Timer.Builder builder = Timer.builder(stage).publishPercentileHistogram();
+            if (format != null) {
+                builder.tag("format", format);
+            }
+            return builder.register(meterRegistry);
+        });
+    }
+
+    private Counter counter(String name, String tag, String value) {
+        return counters.computeIfAbsent(name + "[" + value + "]",
+                key -> Counter.builder(name).tag(tag, value).register(meterRegistry));
+    }
+
+    public static class Snapshot {
+        private final Map<String, long[]> values;
+
+        private Snapshot(Map<String, long[]> values) {
+            this.values = values;
+        }
+    }
+}
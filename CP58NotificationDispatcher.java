@@ -0,0 +1,275 @@
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sends the CP58 distribution notifications queued in the outbox, off the
+ * distribution thread and after its transaction commits. Every node runs the
+ * sweep, so rows are claimed in batches of {@code cp58.notification.batch-size}
+ * with one conditional update before they are sent. A batch is sent inside a
+ * read-only transaction that loads its planners, and the outcomes are written
+ * together once it is done. A claim lasts {@code cp58.notification.claim-lease-ms};
+ * rows of a dispatcher that stopped are claimed again once it expires.
+ * Sends are paced to {@code cp58.notification.rate-per-second}, and a failed
+ * send is retried with exponential backoff up to
+ * {@code cp58.notification.max-attempts} times. A scheduled sweep picks up
+ * retries and rows left behind by a restart.
+ */
+@Slf4j
+@Component
+public class CP58NotificationDispatcher {
+
+    private final CommissionCP58NotificationOutboxDAO commissionCP58NotificationOutboxDAO;
+    private final CP58RecipientBatchDAO cp58RecipientBatchDAO;
+    private final NotificationService notificationService;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+    private final int batchSize;
+    private final long sendIntervalNanos;
+    private final int maxAttempts;
+    private final long retryBackoffMillis;
+    private final long claimLeaseMillis;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cp58-notification");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private long nextSendAt = System.nanoTime();
+
+    public CP58NotificationDispatcher(CommissionCP58NotificationOutboxDAO commissionCP58NotificationOutboxDAO,
+                                      CP58RecipientBatchDAO cp58RecipientBatchDAO,
+                                      NotificationService notificationService, PlatformTransactionManager transactionManager,
+                                      @Value("${cp58.notification.batch-size:100}") int batchSize,
+                                      @Value("${cp58.notification.rate-per-second:20}") int ratePerSecond,
+                                      @Value("${cp58.notification.max-attempts:5}") int maxAttempts,
+                                      @Value("${cp58.notification.retry-backoff-ms:30000}") long retryBackoffMillis,
+                                      @Value("${cp58.notification.claim-lease-ms:600000}") long claimLeaseMillis) {
+        this.commissionCP58NotificationOutboxDAO = commissionCP58NotificationOutboxDAO;
+        this.cp58RecipientBatchDAO = cp58RecipientBatchDAO;
+        this.notificationService = notificationService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+        this.batchSize = Math.max(1, batchSize);
+        this.sendIntervalNanos = ratePerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / ratePerSecond : 0;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryBackoffMillis = retryBackoffMillis;
+        this.claimLeaseMillis = claimLeaseMillis;
+    }
+
+    public CommissionCP58NotificationOutbox newEntry(Planner planner) {
+        LocalDateTime now = LocalDateTime.now();
+        CommissionCP58NotificationOutbox entry = new CommissionCP58NotificationOutbox();
+        entry.setPlannerId(planner.getId());
+        entry.setStatus(CommissionCP58NotificationOutbox.Status.PENDING);
+        entry.setAttempts(0);
+        entry.setNextAttemptAt(now);
+        entry.setCreatedAt(now);
+        return entry;
+    }
+
+    /**
+     * Starts dispatching once the current transaction commits, or right away
+     * when there is none. Nothing is sent if the transaction rolls back.
+     */
+    public void dispatchAfterCommit() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            dispatchAsync();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                dispatchAsync();
+            }
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${cp58.notification.sweep-interval-ms:60000}")
+    public void dispatchAsync() {
+        // One run at a time; a run that is already queued picks up the new rows too
+        if (scheduled.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                scheduled.set(false);
+                dispatchPending();
+            });
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private void dispatchPending() {
+        int sent = 0;
+        int failed = 0;
+        try {
+            List<CommissionCP58NotificationOutbox> batch;
+            // A token per batch, so a batch whose claim expired cannot overwrite the next claimant's outcome
+            while (!(batch = claimDueBatch(UUID.randomUUID().toString())).isEmpty()) {
+                List<CommissionCP58NotificationOutbox> claimed = batch;
+                try {
+                    // Sent while the planners are still managed, so the notification can read their lazy associations
+                    readOnlyTransactionTemplate.executeWithoutResult(status -> sendAll(claimed));
+                } catch (TransactionException e) {
+                    // A failed send may have marked the transaction rollback-only; it wrote nothing, the outcomes are below
+                    log.debug("CP58 notification batch ended with a rolled back read transaction", e);
+                }
+                complete(claimed);
+                for (CommissionCP58NotificationOutbox entry : claimed) {
+                    if (entry.getStatus() == CommissionCP58NotificationOutbox.Status.SENT) {
+                        sent++;
+                    } else if (entry.getStatus() != CommissionCP58NotificationOutbox.Status.SENDING) {
+                        failed++;
+                    }
+                }
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("CP58 notification dispatch stopped, remaining rows are retried on the next sweep", e);
+        }
+        if (sent > 0 || failed > 0) {
+            log.info("Dispatched " + sent + " CP58 notifications, " + failed + " failed");
+        }
+    }
+
+    /**
+     * Claims up to a batch of due rows for {@code owner} with one update.
+     * Rows another node claimed first are skipped.
+     */
+    private List<CommissionCP58NotificationOutbox> claimDueBatch(String owner) {
+        while (true) {
+            LocalDateTime now = LocalDateTime.now();
+            LocalDateTime leaseExpiresAt = now.plusNanos(TimeUnit.MILLISECONDS.toNanos(claimLeaseMillis));
+            List<Long> ids = transactionTemplate.execute(status -> commissionCP58NotificationOutboxDAO.findClaimableIds(
+                    CommissionCP58NotificationOutbox.Status.PENDING, CommissionCP58NotificationOutbox.Status.SENDING,
+                    now, PageRequest.of(0, batchSize)));
+            if (ids.isEmpty()) {
+                return new ArrayList<>();
+            }
+
+            int claimed = commissionCP58NotificationOutboxDAO.claimAll(ids, owner, leaseExpiresAt, now,
+                    CommissionCP58NotificationOutbox.Status.PENDING, CommissionCP58NotificationOutbox.Status.SENDING);
+            // Zero means every row went to another node; look for the next due ones
+            if (claimed > 0) {
+                return transactionTemplate.execute(status -> commissionCP58NotificationOutboxDAO
+                        .findByOwnerAndStatusOrderByIdAsc(owner, CommissionCP58NotificationOutbox.Status.SENDING));
+            }
+        }
+    }
+
+    /**
+     * Sends every claimed row in order, stopping early when the thread is
+     * interrupted; rows left unsent keep their claim until it expires.
+     */
+    private void sendAll(List<CommissionCP58NotificationOutbox> batch) {
+        Map<Long, Planner> planners = cp58RecipientBatchDAO.findPlanners(plannerIds(batch));
+        try {
+            for (CommissionCP58NotificationOutbox entry : batch) {
+                send(entry, planners.get(entry.getPlannerId()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes the outcomes of a batch once it has been sent: one update for
+     * all successful rows and one per failed row, which carries its own
+     * error and retry time. A crash before this point sends the batch again
+     * once its claim expires.
+     */
+    private void complete(List<CommissionCP58NotificationOutbox> batch) {
+        String owner = batch.get(0).getOwner();
+        List<Long> sentIds = new ArrayList<>(batch.size());
+        int attempted = 0;
+        int updated = 0;
+        for (CommissionCP58NotificationOutbox entry : batch) {
+            if (entry.getStatus() == CommissionCP58NotificationOutbox.Status.SENDING) {
+                continue;
+            }
+            attempted++;
+            if (entry.getStatus() == CommissionCP58NotificationOutbox.Status.SENT) {
+                sentIds.add(entry.getId());
+            } else {
+                updated += commissionCP58NotificationOutboxDAO.complete(entry.getId(), owner, entry.getStatus(),
+                        entry.getAttempts(), entry.getNextAttemptAt(), entry.getLastError(), entry.getSentAt());
+            }
+        }
+        if (!sentIds.isEmpty()) {
+            updated += commissionCP58NotificationOutboxDAO.completeSent(sentIds, owner,
+                    CommissionCP58NotificationOutbox.Status.SENT, LocalDateTime.now());
+        }
+        if (updated < attempted) {
+            log.warn("Claim on " + (attempted - updated) + " CP58 notifications expired before their outcome was saved");
+        }
+    }
+
+    private void send(CommissionCP58NotificationOutbox entry, Planner planner) throws InterruptedException {
+        entry.setAttempts(entry.getAttempts() + 1);
+        try {
+            if (planner == null) {
+                throw new IllegalStateException("Planner " + entry.getPlannerId() + " not found");
+            }
+            pace();
+            notificationService.sendPaymentVoucherDistributionComplete(planner.getId(), planner);
+            entry.setStatus(CommissionCP58NotificationOutbox.Status.SENT);
+            entry.setSentAt(LocalDateTime.now());
+            entry.setLastError(null);
+        } catch (RuntimeException e) {
+            String error = String.valueOf(e.getMessage());
+            entry.setLastError(error.length() > 1000 ? error.substring(0, 1000) : error);
+            if (entry.getAttempts() >= maxAttempts) {
+                log.error("Giving up on CP58 notification for planner " + entry.getPlannerId() + " after " + entry.getAttempts() + " attempts", e);
+                entry.setStatus(CommissionCP58NotificationOutbox.Status.FAILED);
+            } else {
+                log.warn("CP58 notification for planner " + entry.getPlannerId() + " failed, retrying later", e);
+                entry.setStatus(CommissionCP58NotificationOutbox.Status.PENDING);
+                long backoff = retryBackoffMillis << Math.min(entry.getAttempts() - 1, 16);
+                entry.setNextAttemptAt(LocalDateTime.now().plusNanos(TimeUnit.MILLISECONDS.toNanos(backoff)));
+            }
+        }
+    }
+
+    private void pace() throws InterruptedException {
+        if (sendIntervalNanos == 0) {
+            return;
+        }
+        long wait = nextSendAt - System.nanoTime();
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+        nextSendAt = Math.max(nextSendAt, System.nanoTime()) + sendIntervalNanos;
+    }
+
+    private static List<Long> plannerIds(List<CommissionCP58NotificationOutbox> batch) {
+        List<Long> plannerIds = new ArrayList<>(batch.size());
+        for (CommissionCP58NotificationOutbox entry : batch) {
+            plannerIds.add(entry.getPlannerId());
+        }
+        return plannerIds;
+    }
+}
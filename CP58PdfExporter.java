@@ -0,0 +1,43 @@
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JasperExportManager;
+import net.sf.jasperreports.engine.JasperPrint;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.io.OutputStream;
+
+@Order(1)
+@Component
+public class CP58PdfExporter implements CP58ReportExporter {
+
+    @Override
+    public String getExtension() {
+        return ".pdf";
+    }
+
+    @Override
+    public String getOutputPath(CommissionReceiverType type) {
+        switch (type) {
+            case ADVISER:
+                return SftpPathConstant.CP58_IN_PDF_ADVISERS_PATH;
+            case BDD:
+                return SftpPathConstant.CP58_IN_PDF_BDD_PATH;
+            case BDM:
+                return SftpPathConstant.CP58_IN_PDF_BDM_PATH;
+            case VEP:
+                return SftpPathConstant.CP58_IN_PDF_VEP_PATH;
+            case FOV:
+                return SftpPathConstant.CP58_IN_PDF_FOV_PATH;
+            case MR:
+                return SftpPathConstant.CP58_IN_PDF_MR_PATH;
+            default:
+                throw new ServiceAppException(HttpStatus.BAD_REQUEST, ComcalError.CP58_INVALID_RECIPIENT_TYPE.getCode() + type);
+        }
+    }
+
+    @Override
+    public void export(JasperPrint jasperPrint, OutputStream outputStream) throws JRException {
+        JasperExportManager.exportReportToPdfStream(jasperPrint, outputStream);
+    }
+}
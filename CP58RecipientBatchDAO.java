@@ -0,0 +1,164 @@
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Batched lookups used while rebuilding CP58 rows from giro totals. Every
+ * method takes a batch of ids and answers with one {@code IN} query, so the
+ * number of round trips follows the number of batches rather than the number
+ * of recipients.
+ */
+@Repository
+public class CP58RecipientBatchDAO {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final int batchSize;
+
+    public CP58RecipientBatchDAO(@Value("${cp58.prefetch.batch-size:1000}") int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public List<List<Long>> partition(Collection<Long> ids) {
+        List<List<Long>> batches = new ArrayList<>();
+        List<Long> batch = new ArrayList<>(Math.min(batchSize, ids.size()));
+        for (Long id : ids) {
+            batch.add(id);
+            if (batch.size() == batchSize) {
+                batches.add(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    public Map<Long, Planner> findPlanners(Collection<Long> ids) {
+        List<Planner> planners = entityManager.createQuery(
+                        "select p from Planner p where p.id in :ids", Planner.class)
+                .setParameter("ids", ids)
+                .getResultList();
+
+        Map<Long, Planner> plannerById = new HashMap<>();
+        for (Planner planner : planners) {
+            plannerById.put(planner.getId(), planner);
+        }
+        return plannerById;
+    }
+
+    public Map<Long, Company> findCompanies(Collection<Long> ids) {
+        List<Company> companies = entityManager.createQuery(
+                        "select c from Company c left join fetch c.companyOwner left join fetch c.branch where c.id in :ids",
+                        Company.class)
+                .setParameter("ids", ids)
+                .getResultList();
+
+        Map<Long, Company> companyById = new HashMap<>();
+        for (Company company : companies) {
+            companyById.put(company.getId(), company);
+        }
+        return companyById;
+    }
+
+    public Map<Long, Affiliate> findAffiliates(Collection<Long> ids) {
+        List<Affiliate> affiliates = entityManager.createQuery(
+                        "select a from Affiliate a left join fetch a.fov left join fetch a.vep left join fetch a.mr where a.id in :ids",
+                        Affiliate.class)
+                .setParameter("ids", ids)
+                .getResultList();
+
+        Map<Long, Affiliate> affiliateById = new HashMap<>();
+        for (Affiliate affiliate : affiliates) {
+            affiliateById.put(affiliate.getId(), affiliate);
+        }
+        return affiliateById;
+    }
+
+    /**
+     * Id of each planner whose VKA code is in {@code vkaCodes}, queried
+     * {@code batchSize} codes at a time.
+     */
+    public Map<String, Long> findPlannerIdsByCode(Collection<String> vkaCodes) {
+        return findIdsByCode("select p.vkaCode, p.id from Planner p where p.vkaCode in :codes", vkaCodes);
+    }
+
+    /**
+     * Id of each company whose code is in {@code codes}, queried
+     * {@code batchSize} codes at a time.
+     */
+    public Map<String, Long> findCompanyIdsByCode(Collection<String> codes) {
+        return findIdsByCode("select c.code, c.id from Company c where c.code in :codes", codes);
+    }
+
+    /**
+     * Unloaded reference to a planner, for linking rows to it by id alone.
+     */
+    public Planner getPlannerReference(Long id) {
+        return id != null ? entityManager.getReference(Planner.class, id) : null;
+    }
+
+    public Company getCompanyReference(Long id) {
+        return id != null ? entityManager.getReference(Company.class, id) : null;
+    }
+
+    private Map<String, Long> findIdsByCode(String query, Collection<String> codes) {
+        Map<String, Long> idByCode = new HashMap<>();
+        List<String> codeList = new ArrayList<>(codes);
+        for (int from = 0; from < codeList.size(); from += batchSize) {
+            List<Object[]> rows = entityManager.createQuery(query, Object[].class)
+                    .setParameter("codes", codeList.subList(from, Math.min(from + batchSize, codeList.size())))
+                    .getResultList();
+            for (Object[] row : rows) {
+                idByCode.put((String) row[0], (Long) row[1]);
+            }
+        }
+        return idByCode;
+    }
+
+    /**
+     * Receiver type of each recipient id from its {@link CommissionOCBCGiro}
+     * rows, one row per distinct type. A recipient with several types gets
+     * the one that sorts first, so the choice is the same on every run.
+     */
+    public Map<Long, CommissionReceiverType> findReceiverTypes(Collection<Long> recipientIds) {
+        List<Object[]> rows = entityManager.createQuery(
+                        "select distinct g.commissionReceiverTypeId, g.commissionReceiverType from CommissionOCBCGiro g"
+                                + " where g.commissionReceiverTypeId in :ids"
+                                + " order by g.commissionReceiverTypeId, g.commissionReceiverType", Object[].class)
+                .setParameter("ids", recipientIds)
+                .getResultList();
+
+        Map<Long, CommissionReceiverType> receiverTypeById = new HashMap<>();
+        for (Object[] row : rows) {
+            receiverTypeById.putIfAbsent((Long) row[0], (CommissionReceiverType) row[1]);
+        }
+        return receiverTypeById;
+    }
+
+    public Map<CommissionReceiverType, Map<Long, CommissionCP58>> findCommissionCP58(Collection<Long> recipientIds, int years) {
+        List<CommissionCP58> rows = entityManager.createQuery(
+                        "select c from CommissionCP58 c where c.recipientId in :ids and c.years = :years",
+                        CommissionCP58.class)
+                .setParameter("ids", recipientIds)
+                .setParameter("years", years)
+                .getResultList();
+
+        Map<CommissionReceiverType, Map<Long, CommissionCP58>> cp58ByType = new EnumMap<>(CommissionReceiverType.class);
+        for (CommissionCP58 row : rows) {
+            cp58ByType.computeIfAbsent(row.getRecipientType(), type -> new HashMap<>())
+                    .put(row.getRecipientId(), row);
+        }
+        return cp58ByType;
+    }
+}
@@ -0,0 +1,31 @@
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JasperPrint;
+
+import java.io.OutputStream;
+
+/**
+ * Writes a filled CP58 {@link JasperPrint} in one output format. Every exporter
+ * receives the same print, so a recipient is filled only once however many
+ * formats are produced.
+ */
+public interface CP58ReportExporter {
+
+    /**
+     * File extension including the leading dot, e.g. {@code ".pdf"}.
+     */
+    String getExtension();
+
+    /**
+     * SFTP folder this format is uploaded to for the given recipient type.
+     */
+    String getOutputPath(CommissionReceiverType type);
+
+    void export(JasperPrint jasperPrint, OutputStream outputStream) throws JRException;
+
+    /**
+     * Whether this format is produced per recipient in the current configuration.
+     */
+    default boolean isEnabled() {
+        return true;
+    }
+}
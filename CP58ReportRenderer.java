@@ -0,0 +1,184 @@
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.SftpException;
+import lombok.extern.slf4j.Slf4j;
+import net.sf.jasperreports.engine.JREmptyDataSource;
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JROrigin;
+import net.sf.jasperreports.engine.JRPrintPage;
+import net.sf.jasperreports.engine.JRStyle;
+import net.sf.jasperreports.engine.JasperFillManager;
+import net.sf.jasperreports.engine.JasperPrint;
+import net.sf.jasperreports.engine.JasperReport;
+import net.sf.jasperreports.engine.data.JRBeanCollectionDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * The fill, export and upload steps for a single CP58 recipient, or a batch of
+ * them in the case of {@link #fillBatch(JasperReport, List)}. Holds no
+ * per-recipient state, so every step can be called from several worker
+ * threads at once.
+ */
+@Slf4j
+@Component
+public class CP58ReportRenderer {
+
+    private final CP58SftpUploader cp58SftpUploader;
+    private final CP58BufferPool cp58BufferPool;
+    private final CP58Metrics cp58Metrics;
+    private final List<CP58ReportExporter> cp58ReportExporters;
+    private final boolean streamToSftp;
+
+    public CP58ReportRenderer(CP58SftpUploader cp58SftpUploader, CP58BufferPool cp58BufferPool, CP58Metrics cp58Metrics,
+                              List<CP58ReportExporter> cp58ReportExporters,
+                              @Value("${cp58.export.stream-to-sftp:true}") boolean streamToSftp) {
+        this.cp58SftpUploader = cp58SftpUploader;
+        this.cp58BufferPool = cp58BufferPool;
+        this.cp58Metrics = cp58Metrics;
+        this.cp58ReportExporters = cp58ReportExporters.stream()
+                .filter(CP58ReportExporter::isEnabled)
+                .collect(Collectors.toList());
+        this.streamToSftp = streamToSftp;
+    }
+
+    /**
+     * Whether exporters write straight into the SFTP channel, which skips the
+     * in-memory copy but also the retry that a buffered upload allows.
+     */
+    public boolean isStreamingExport() {
+        return streamToSftp && cp58SftpUploader.supportsStreaming();
+    }
+
+    public List<CP58ReportExporter> getExporters() {
+        return cp58ReportExporters;
+    }
+
+    public JasperPrint fill(JasperReport jasperReport, Map<String, Object> parameters) throws JRException {
+        long start = cp58Metrics.start();
+        JasperPrint jasperPrint = JasperFillManager.fillReport(jasperReport, parameters, new JREmptyDataSource());
+        cp58Metrics.stop(CP58Metrics.FILL, start);
+        return jasperPrint;
+    }
+
+    /**
+     * Fills every row in one pass of the batch template, which prints one
+     * recipient per page, and splits the result into one document per row.
+     *
+     * @return the documents in row order, or {@code null} when the page count
+     * does not match the row count and the rows have to be filled one by one
+     */
+    public List<JasperPrint> fillBatch(JasperReport batchReport, List<CP58ReportRow> rows) throws JRException {
+        long start = cp58Metrics.start();
+        JasperPrint batch = JasperFillManager.fillReport(batchReport, new HashMap<>(), new JRBeanCollectionDataSource(rows, false));
+        cp58Metrics.stop(CP58Metrics.BATCH_FILL, start);
+
+        List<JRPrintPage> pages = batch.getPages();
+        if (pages.size() != rows.size()) {
+            log.warn("CP58 batch template printed " + pages.size() + " pages for " + rows.size() + " recipients");
+            return null;
+        }
+        List<JasperPrint> jasperPrints = new ArrayList<>(pages.size());
+        for (JRPrintPage page : pages) {
+            jasperPrints.add(singlePage(batch, page));
+        }
+        return jasperPrints;
+    }
+
+    /**
+     * A document holding one page of {@code batch}, sharing its page setup,
+     * styles and origins, which the page's elements point to.
+     */
+    private static JasperPrint singlePage(JasperPrint batch, JRPrintPage page) throws JRException {
+        JasperPrint jasperPrint = new JasperPrint();
+        jasperPrint.setName(batch.getName());
+        jasperPrint.setPageWidth(batch.getPageWidth());
+        jasperPrint.setPageHeight(batch.getPageHeight());
+        jasperPrint.setTopMargin(batch.getTopMargin());
+        jasperPrint.setLeftMargin(batch.getLeftMargin());
+        jasperPrint.setBottomMargin(batch.getBottomMargin());
+        jasperPrint.setRightMargin(batch.getRightMargin());
+        jasperPrint.setOrientation(batch.getOrientationValue());
+        jasperPrint.setFormatFactoryClass(batch.getFormatFactoryClass());
+        jasperPrint.setLocaleCode(batch.getLocaleCode());
+        jasperPrint.setTimeZoneId(batch.getTimeZoneId());
+        for (String propertyName : batch.getPropertyNames()) {
+            jasperPrint.setProperty(propertyName, batch.getProperty(propertyName));
+        }
+        for (JRStyle style : batch.getStyles()) {
+            jasperPrint.addStyle(style);
+        }
+        jasperPrint.setDefaultStyle(batch.getDefaultStyle());
+        for (JROrigin origin : batch.getOrigins()) {
+            jasperPrint.addOrigin(origin);
+        }
+        jasperPrint.addPage(page);
+        return jasperPrint;
+    }
+
+    public void exportToSftp(CP58ReportExporter exporter, JasperPrint jasperPrint, String outputFilePath)
+            throws JRException, IOException, JSchException, SftpException, InterruptedException {
+        CP58SftpUploader.UploadStream outputStream = cp58SftpUploader.openUploadStream(outputFilePath);
+        long start = cp58Metrics.start();
+        try {
+            exporter.export(jasperPrint, outputStream);
+        } catch (JRException | RuntimeException e) {
+            outputStream.abort();
+            throw e;
+        }
+        // Includes the transfer, which overlaps with exporting when streaming
+        cp58Metrics.stop(CP58Metrics.EXPORT, formatOf(exporter), start);
+        outputStream.close();
+    }
+
+    /**
+     * Exports into a pooled buffer; the caller hands it back with
+     * {@link #release(CP58BufferPool.Buffer)} once it has been uploaded.
+     */
+    public CP58BufferPool.Buffer export(CP58ReportExporter exporter, JasperPrint jasperPrint) throws JRException {
+        CP58BufferPool.Buffer buffer = cp58BufferPool.borrow();
+        long start = cp58Metrics.start();
+        try {
+            exporter.export(jasperPrint, buffer);
+        } catch (JRException | RuntimeException e) {
+            cp58BufferPool.release(buffer);
+            throw e;
+        }
+        cp58Metrics.stop(CP58Metrics.EXPORT, formatOf(exporter), start);
+        return buffer;
+    }
+
+    public void upload(String outputFilePath, CP58BufferPool.Buffer buffer) throws IOException, JSchException, SftpException, InterruptedException {
+        cp58SftpUploader.upload(outputFilePath, buffer);
+    }
+
+    public void release(CP58BufferPool.Buffer buffer) {
+        cp58BufferPool.release(buffer);
+    }
+
+    private static String formatOf(CP58ReportExporter exporter) {
+        return exporter.getExtension().substring(1);
+    }
+
+    public String getOutputFilePath(CP58ReportExporter exporter, Map<String, Object> parameters) {
+        CommissionReceiverType type = (CommissionReceiverType) parameters.get("type");
+        return exporter.getOutputPath(type) + "/" + getDynamicReportFileName(parameters) + exporter.getExtension();
+    }
+
+    public String getDynamicReportFileName(Map<String, Object> parameters) {
+        String code = (String) parameters.get("code");
+        String recipientName = (String) parameters.get("recipientName");
+        String sanitizedRecipientName = recipientName.replaceAll("\\s+", "");
+        String currentDate = LocalDate.now().format(DateTimeFormatter.ofPattern("yyyyMMdd"));
+
+        return String.format("%s_%s_%s", code, sanitizedRecipientName, currentDate);
+    }
+}
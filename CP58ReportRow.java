@@ -0,0 +1,118 @@
+import java.math.BigDecimal;
+import java.util.Map;
+
+/**
+ * One CP58 recipient as a row of the batch template, where every value the
+ * single-recipient template reads as a parameter is a field instead. Built
+ * from the same parameter map, so both fill modes print identical values.
+ */
+public class CP58ReportRow {
+
+    private final String identificationId;
+    private final BigDecimal commission;
+    private final BigDecimal vehicle;
+    private final BigDecimal house;
+    private final BigDecimal travel;
+    private final BigDecimal others1;
+    private final BigDecimal training;
+    private final BigDecimal others2;
+    private final String taxNo1;
+    private final String taxNo2;
+    private final Object residentInMalaysia;
+    private final String recipientName;
+    private final String recipientAddress;
+    private final Integer year;
+    private final String code;
+    private final CommissionReceiverType type;
+
+    private CP58ReportRow(Map<String, Object> parameters) {
+        this.identificationId = (String) parameters.get("identificationId");
+        this.commission = (BigDecimal) parameters.get("commission");
+        this.vehicle = (BigDecimal) parameters.get("vehicle");
+        this.house = (BigDecimal) parameters.get("house");
+        this.travel = (BigDecimal) parameters.get("travel");
+        this.others1 = (BigDecimal) parameters.get("others1");
+        this.training = (BigDecimal) parameters.get("training");
+        this.others2 = (BigDecimal) parameters.get("others2");
+        this.taxNo1 = (String) parameters.get("taxNo1");
+        this.taxNo2 = (String) parameters.get("taxNo2");
+        this.residentInMalaysia = parameters.get("residentInMalaysia");
+        this.recipientName = (String) parameters.get("recipientName");
+        this.recipientAddress = (String) parameters.get("recipientAddress");
+        this.year = (Integer) parameters.get("year");
+        this.code = (String) parameters.get("code");
+        this.type = (CommissionReceiverType) parameters.get("type");
+    }
+
+    public static CP58ReportRow of(Map<String, Object> parameters) {
+        return new CP58ReportRow(parameters);
+    }
+
+    public String getIdentificationId() {
+        return identificationId;
+    }
+
+    public BigDecimal getCommission() {
+        return commission;
+    }
+
+    public BigDecimal getVehicle() {
+        return vehicle;
+    }
+
+    public BigDecimal getHouse() {
+        return house;
+    }
+
+    public BigDecimal getTravel() {
+        return travel;
+    }
+
+    public BigDecimal getOthers1() {
+        return others1;
+    }
+
+    public BigDecimal getTraining() {
+        return training;
+    }
+
+    public BigDecimal getOthers2() {
+        return others2;
+    }
+
+    public String getTaxNo1() {
+        return taxNo1;
+    }
+
+    public String getTaxNo2() {
+        return taxNo2;
+    }
+
+    /**
+     * The stored flag, or an empty string when it is unknown, as in the
+     * parameter map.
+     */
+    public Object getResidentInMalaysia() {
+        return residentInMalaysia;
+    }
+
+    public String getRecipientName() {
+        return recipientName;
+    }
+
+    public String getRecipientAddress() {
+        return recipientAddress;
+    }
+
+    public Integer getYear() {
+        return year;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public CommissionReceiverType getType() {
+        return type;
+    }
+}
@@ -1,821 +1,974 @@
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
-import com.jcraft.jsch.JSchException;
-import com.jcraft.jsch.SftpException;
-import lombok.extern.slf4j.Slf4j;
-import net.sf.jasperreports.engine.JREmptyDataSource;
-import net.sf.jasperreports.engine.JRException;
-import net.sf.jasperreports.engine.JasperCompileManager;
-import net.sf.jasperreports.engine.JasperExportManager;
-import net.sf.jasperreports.engine.JasperFillManager;
-import net.sf.jasperreports.engine.JasperPrint;
-import net.sf.jasperreports.engine.JasperReport;
-import net.sf.jasperreports.engine.export.ooxml.JRXlsxExporter;
-import net.sf.jasperreports.export.SimpleExporterInput;
-import net.sf.jasperreports.export.SimpleOutputStreamExporterOutput;
-import net.sf.jasperreports.export.SimpleXlsxReportConfiguration;
-import org.springframework.http.HttpStatus;
-import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
-
-import java.io.*;
-import java.math.BigDecimal;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
-import java.time.LocalDate;
-import java.time.Year;
-import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
-
-@Slf4j
-@Service
-public class CP58Service extends BaseOssFileConverter {
-
-    private final CommissionOCBCGiroDAO commissionOCBCGiroDAO;
-    private final PlannerDAO plannerDAO;
-    private final AffiliateDAO affiliateDAO;
-    private final CompanyDAO companyDAO;
-    private static final String TEMPLATE_NAME = "CP58.jrxml";
-    public static final String MALAYSIA = "MALAYSIA";
-    private final CommissionCP58JobHelper commissionCP58JobHelper;
-    private final BaseSFTP baseSFTP;
-    private final CommissionCP58DAO commissionCP58DAO;
-    private final ConsumeOCBCGiroFileDAO consumeOCBCGiroFileDAO;
-    private final DistributeCP58FileDAO distributeCP58FileDAO;
-    private final NotificationService notificationService;
-
-    public CP58Service(CommissionOCBCGiroDAO commissionOCBCGiroDAO,
-                       PlannerDAO plannerDAO, CommissionCP58DAO commissionCP58DAO, AffiliateDAO affiliateDAO,
-                       CompanyDAO companyDAO, ConsumeOCBCGiroFileDAO consumeOCBCGiroFileDAO, BaseSFTP baseSFTP,
-                       OssTemplateService ossTemplateService, CommissionCP58JobHelper commissionCP58JobHelper, DistributeCP58FileDAO distributeCP58FileDAO,
-                       NotificationService notificationService) {
-        this.commissionOCBCGiroDAO = commissionOCBCGiroDAO;
-        this.plannerDAO = plannerDAO;
-        this.commissionCP58DAO = commissionCP58DAO;
-        this.affiliateDAO = affiliateDAO;
-        this.companyDAO = companyDAO;
-        this.consumeOCBCGiroFileDAO = consumeOCBCGiroFileDAO;
-        this.baseSFTP = baseSFTP;
-        this.commissionCP58JobHelper = commissionCP58JobHelper;
-        this.distributeCP58FileDAO = distributeCP58FileDAO;
-        this.notificationService = notificationService;
-        this.ossTemplateService = ossTemplateService;
-    }
-
-    @Transactional(rollbackFor = Exception.class)
-    public GenericResponseVo generateCP58() {
-        GenericResponseVo genericResponseVo = new GenericResponseVo();
-        try {
-            String templatePath = buildTemplatePath(TEMPLATE_NAME);
-
-            processGiroData();
-
-            List<Map<String, Object>> parametersList = buildReportParameters();
-
-            for (Map<String, Object> parameters : parametersList) {
-                String type = parameters.get("type").toString();
-                String outputExcelFilePath = null;
-                String outputPdfFilePath = null;
-
-                switch (type) {
-                    case "ADVISER":
-                        outputExcelFilePath = SftpPathConstant.CP58_IN_EXCEL_ADVISERS_PATH + "/";
-                        outputPdfFilePath = SftpPathConstant.CP58_IN_PDF_ADVISERS_PATH + "/";
-                        break;
-                    case "BDD":
-                        outputExcelFilePath = SftpPathConstant.CP58_IN_EXCEL_BDD_PATH + "/";
-                        outputPdfFilePath = SftpPathConstant.CP58_IN_PDF_BDD_PATH + "/";
-                        break;
-                    case "BDM":
-                        outputExcelFilePath = SftpPathConstant.CP58_IN_EXCEL_BDM_PATH + "/";
-                        outputPdfFilePath = SftpPathConstant.CP58_IN_PDF_BDM_PATH + "/";
-                        break;
-                    case "VEP":
-                        outputExcelFilePath = SftpPathConstant.CP58_IN_EXCEL_VEP_PATH + "/";
-                        outputPdfFilePath = SftpPathConstant.CP58_IN_PDF_VEP_PATH + "/";
-                        break;
-                    case "FOV":
-                        outputExcelFilePath = SftpPathConstant.CP58_IN_EXCEL_FOV_PATH + "/";
-                        outputPdfFilePath = SftpPathConstant.CP58_IN_PDF_FOV_PATH + "/";
-                        break;
-                    case "MR":
-                        outputExcelFilePath = SftpPathConstant.CP58_IN_EXCEL_MR_PATH + "/";
-                        outputPdfFilePath = SftpPathConstant.CP58_IN_PDF_MR_PATH + "/";
-                        break;
-                }
-
-                String fileName = getDynamicReportFileName(parameters);
-                generateReport(templatePath, parameters, outputExcelFilePath + fileName, "pdf");
-                generateReport(templatePath, parameters, outputPdfFilePath + fileName, "excel");
-            }
-            commissionCP58JobHelper.updateCP58Job(
-                    1L, CommissionCP58JobType.COMMISSION_CP58_JOB_TYPE_1,
-                    JobStatus.COMPLETE, false);
-            genericResponseVo.setSuccess(true);
-
-            return genericResponseVo;
-
-        } catch (IOException e) {
-            String errorMessage = String.format(ComcalError.CP58_PATH_TEMPLATE_ERROR.getDescription(),
-                    "CP58 Service", e);
-            log.error(errorMessage);
-            genericResponseVo.setSuccess(false);
-            genericResponseVo.setCode(ComcalError.CP58_PATH_TEMPLATE_ERROR.getCode());
-            genericResponseVo.setMessage(errorMessage);
-            // Update cp58 job table
-            commissionCP58JobHelper.updateCP58Job(
-                    1L, CommissionCP58JobType.COMMISSION_CP58_JOB_TYPE_1,
-                    JobStatus.FAILED, false);
-        } catch (JRException e) {
-            String errorMessage = String.format(ComcalError.CP58_JASPER_REPORT_EXPORT_ERROR.getDescription(),
-                    "CP58 Service", e);
-            log.error(errorMessage);
-            genericResponseVo.setSuccess(false);
-            genericResponseVo.setCode(ComcalError.CP58_JASPER_REPORT_EXPORT_ERROR.getCode());
-            genericResponseVo.setMessage(errorMessage);
-            commissionCP58JobHelper.updateCP58Job(
-                    1L, CommissionCP58JobType.COMMISSION_CP58_JOB_TYPE_1,
-                    JobStatus.FAILED, false);
-        } catch (Exception e) {
-            String errorMessage = String.format(ComcalError.CP58_GENERAL_ERROR.getDescription(),
-                    "CP58 Service", e);
-            log.error(errorMessage);
-            genericResponseVo.setSuccess(false);
-            genericResponseVo.setCode(ComcalError.CALCULATE_GENERAL_EXCEPTION.getCode());
-            genericResponseVo.setMessage(errorMessage);
-            commissionCP58JobHelper.updateCP58Job(
-                    1L, CommissionCP58JobType.COMMISSION_CP58_JOB_TYPE_1,
-                    JobStatus.FAILED, false);
-        }
-        if (!genericResponseVo.getSuccess() || genericResponseVo.getCode() != null) {
-            throw new ServiceAppException(HttpStatus.BAD_REQUEST, genericResponseVo.getCode(), genericResponseVo.getMessage());
-        } else {
-            return genericResponseVo;
-        }
-    }
-
-    @Transactional(rollbackFor = Exception.class)
-    public GenericResponseVo distributeCP58() {
-        GenericResponseVo genericResponseVo = new GenericResponseVo();
-
-        String cp58PatternString = "\\w+_[A-Za-z0-9]+_\\d{4}(0[1-9]|1[0-2])(0[1-9]|[12]\\d|3[01])\\.pdf";
-        Pattern cp58FilePattern = Pattern.compile(cp58PatternString);
-
-        String cp58OutDirectory = baseSFTP.Cp58Directory() + "OUT/PDF/";
-        String distributedCP58Directory = baseSFTP.distributedCP58Directory();
-        String archivedCP58Directory = baseSFTP.archivedCP58Directory();
-
-        try {
-
-            distributeFiles(cp58OutDirectory,
-                    distributedCP58Directory,
-                    cp58FilePattern,
-                    CommissionReceiverType.ADVISER);
-
-            distributeFiles(cp58OutDirectory,
-                    distributedCP58Directory,
-                    cp58FilePattern,
-                    CommissionReceiverType.BDD);
-
-            distributeFiles(cp58OutDirectory,
-                    distributedCP58Directory,
-                    cp58FilePattern,
-                    CommissionReceiverType.BDM);
-
-            //Archive the cp58
-            archiveCP58(cp58OutDirectory,
-                    archivedCP58Directory,
-                    cp58FilePattern,
-                    CommissionReceiverType.ADVISER);
-
-            archiveCP58(cp58OutDirectory,
-                    archivedCP58Directory,
-                    cp58FilePattern,
-                    CommissionReceiverType.BDD);
-
-            archiveCP58(cp58OutDirectory,
-                    archivedCP58Directory,
-                    cp58FilePattern,
-                    CommissionReceiverType.BDM);
-
-            commissionCP58JobHelper.updateCP58Job(
-                    2L, CommissionCP58JobType.COMMISSION_CP58_JOB_TYPE_2,
-                    JobStatus.COMPLETE, false);
-            genericResponseVo.setSuccess(true);
-
-        } catch (IOException e) {
-            String errorMessage = String.format(ComcalError.DISTRIBUTE_CP58_NOT_FOUND.getDescription(),
-                    "Distribute CP58 Service", e);
-            log.error(errorMessage);
-            genericResponseVo.setSuccess(false);
-            genericResponseVo.setCode(ComcalError.DISTRIBUTE_CP58_NOT_FOUND.getCode());
-            genericResponseVo.setMessage(errorMessage);
-            commissionCP58JobHelper.updateCP58Job(
-                    2L, CommissionCP58JobType.COMMISSION_CP58_JOB_TYPE_2,
-                    JobStatus.FAILED, false);
-        } catch (Exception e) {
-            String errorMessage = String.format(ComcalError.DISTRIBUTE_CP58_GENERAL_ERROR.getDescription(),
-                    "Distribute CP58 Service", e);
-            log.error(errorMessage);
-            genericResponseVo.setSuccess(false);
-            genericResponseVo.setCode(ComcalError.DISTRIBUTE_CP58_GENERAL_ERROR.getCode());
-            genericResponseVo.setMessage(errorMessage);
-            commissionCP58JobHelper.updateCP58Job(
-                    2L, CommissionCP58JobType.COMMISSION_CP58_JOB_TYPE_2,
-                    JobStatus.FAILED, false);
-        }
-
-        return genericResponseVo;
-    }
-
-    public static String formatAddress(String jsonAddress) {
-        if (jsonAddress != null) {
-            String cleanedJson = jsonAddress.replaceAll("[{}\"]", "");
-            String[] keyValuePairs = cleanedJson.split(",");
-            String addressLine1 = "";
-            String addressLine2 = "";
-            String city = "";
-            String state = "";
-            String country = "";
-            String postcode = "";
-            String extra = "";
-
-            for (String pair : keyValuePairs) {
-                String[] keyValue = pair.split(":");
-                String key = keyValue[0].trim();
-                String value = keyValue.length > 1 ? keyValue[1].trim() : "";
-
-                switch (key) {
-                    case "addressLine1":
-                        addressLine1 = value;
-                        break;
-                    case "addressLine2":
-                        addressLine2 = value;
-                        break;
-                    case "city":
-                        city = value;
-                        break;
-                    case "state":
-                        state = value;
-                        break;
-                    case "country":
-                        country = value;
-                        break;
-                    case "postcode":
-                        postcode = value;
-                        break;
-                    default:
-                        extra = value;
-                }
-            }
-
-            StringBuilder formattedAddress = new StringBuilder();
-            if (!addressLine1.isEmpty()) {
-                formattedAddress.append(addressLine1);
-            }
-            if (!addressLine2.isEmpty()) {
-                if (formattedAddress.length() > 0) formattedAddress.append(", ");
-                formattedAddress.append(addressLine2);
-            }
-            if (!city.isEmpty()) {
-                if (formattedAddress.length() > 0) formattedAddress.append(", ");
-                formattedAddress.append(city);
-            }
-            if (!state.isEmpty()) {
-                if (formattedAddress.length() > 0) formattedAddress.append(", ");
-                formattedAddress.append(state);
-            }
-            if (!postcode.isEmpty()) {
-                if (formattedAddress.length() > 0) formattedAddress.append(", ");
-                formattedAddress.append(postcode);
-            }
-            if (!country.isEmpty()) {
-                if (formattedAddress.length() > 0) formattedAddress.append(", ");
-                formattedAddress.append(country);
-            }
-            if (!extra.isEmpty()) {
-                if (formattedAddress.length() > 0) formattedAddress.append(", ");
-                formattedAddress.append(extra);
-            }
-
-            return formattedAddress.toString();
-        }
-        return "";
-    }
-
-    private List<Map<String, Object>> buildReportParameters() {
-
-        int year = Year.now().getValue() - 1;
-        List<CommissionCP58> adviserList = commissionCP58DAO.findByRecipientTypeAndYears(CommissionReceiverType.ADVISER, year);
-        List<CommissionCP58> bdmList = commissionCP58DAO.findByRecipientTypeAndYears(CommissionReceiverType.BDM, year);
-        List<CommissionCP58> bddList = commissionCP58DAO.findByRecipientTypeAndYears(CommissionReceiverType.BDD, year);
-        List<CommissionCP58> vepList = commissionCP58DAO.findByRecipientTypeAndYears(CommissionReceiverType.VEP, year);
-        List<CommissionCP58> fovList = commissionCP58DAO.findByRecipientTypeAndYears(CommissionReceiverType.FOV, year);
-        List<CommissionCP58> mrList = commissionCP58DAO.findByRecipientTypeAndYears(CommissionReceiverType.MR, year);
-
-        List<Map<String, Object>> parameterList = new ArrayList<>();
-        parameterList.addAll(buildParametersForList(adviserList, CommissionReceiverType.ADVISER));
-        parameterList.addAll(buildParametersForList(bdmList, CommissionReceiverType.BDM));
-        parameterList.addAll(buildParametersForList(bddList, CommissionReceiverType.BDD));
-        parameterList.addAll(buildParametersForList(vepList, CommissionReceiverType.VEP));
-        parameterList.addAll(buildParametersForList(fovList, CommissionReceiverType.FOV));
-        parameterList.addAll(buildParametersForList(mrList, CommissionReceiverType.MR));
-
-        return parameterList;
-    }
-
-    private String getDynamicReportFileName(Map<String, Object> parameters) {
-        String code = (String) parameters.get("code");
-        String recipientName = (String) parameters.get("recipientName");
-        String sanitizedRecipientName = recipientName.replaceAll("\\s+", "");
-        String currentDate = LocalDate.now().format(DateTimeFormatter.ofPattern("yyyyMMdd"));
-
-        String fileName = String.format("%s_%s_%s", code, sanitizedRecipientName, currentDate);
-
-        return fileName;
-    }
-
-    private String buildTemplatePath(String templateName) {
-        return Paths.get(baseSFTP.cp58Template(), templateName).toString();
-    }
-
-    private void processGiroData() {
-
-        int currentYear = Year.now().getValue();
-        List<ConsumeOCBCGiroFile> giroFileList = consumeOCBCGiroFileDAO.findByFileYear(currentYear);
-        List<ConsumeOCBCGiroFile> adviserGiroFiles = new ArrayList<>();
-        List<ConsumeOCBCGiroFile> affiliateGiroFiles = new ArrayList<>();
-        List<ConsumeOCBCGiroFile> companyGiroFiles = new ArrayList<>();
-
-        for (ConsumeOCBCGiroFile giroFile : giroFileList) {
-            if (giroFile.getAdviser() != null) {
-                adviserGiroFiles.add(giroFile);
-            } else if (giroFile.getAffiliate() != null) {
-                affiliateGiroFiles.add(giroFile);
-            } else if (giroFile.getCompany() != null) {
-                companyGiroFiles.add(giroFile);
-            }
-        }
-        //process recipient giro to database
-        processAdviser(adviserGiroFiles);
-        processBdmBdd(companyGiroFiles);
-        processVepMrFov(affiliateGiroFiles);
-
-    }
-
-    private List<Map<String, Object>> buildParametersForList(List<CommissionCP58> commissionList, CommissionReceiverType type) {
-        List<Map<String, Object>> parameterList = new ArrayList<>();
-
-        for (CommissionCP58 cp58 : commissionList) {
-            Map<String, Object> parameters = new HashMap<>();
-
-            parameters.put("identificationId", cp58.getRecipientIdentificationNo() != null ? cp58.getRecipientIdentificationNo() : "");
-            parameters.put("commission", BigDecimal.valueOf(0));
-            parameters.put("vehicle", cp58.getTotalVehicleIncentive() != null ? cp58.getTotalVehicleIncentive() : BigDecimal.valueOf(0));
-            parameters.put("house", cp58.getTotalHouseIncentive() != null ? cp58.getTotalHouseIncentive() : BigDecimal.valueOf(0));
-            parameters.put("travel", cp58.getTotalTourTravelPackageIncentive() != null ? cp58.getTotalTourTravelPackageIncentive() : BigDecimal.valueOf(0));
-            parameters.put("others1", cp58.getTotalReferralAmount() != null ? cp58.getTotalReferralAmount() : BigDecimal.valueOf(0));
-            parameters.put("training", cp58.getTotalTrainingDevelopmentIncentive() != null ? cp58.getTotalTrainingDevelopmentIncentive() : BigDecimal.valueOf(0));
-            parameters.put("others2", cp58.getTotalOtherIncentive() != null ? cp58.getTotalOtherIncentive() : BigDecimal.valueOf(0));
-
-            Map<String, String> taxParts = extractTaxNoParts(cp58.getRecipientIncomeTaxNo() != null ? cp58.getRecipientIncomeTaxNo() : "");
-            parameters.put("taxNo1", taxParts.get("taxNo1"));
-            parameters.put("taxNo2", taxParts.get("taxNo2"));
-
-            parameters.put("residentInMalaysia", cp58.getResidentInMalaysia() != null ? cp58.getResidentInMalaysia() : "");
-            parameters.put("recipientName", cp58.getRecipientName() != null ? cp58.getRecipientName() : "");
-            parameters.put("recipientAddress", cp58.getRecipientAddress() != null ? cp58.getRecipientAddress() : "");
-            parameters.put("year", cp58.getYears() + 1);
-            parameters.put("code", cp58.getRecipientCode());
-            parameters.put("type", type);
-
-            parameterList.add(parameters);
-        }
-
-        return parameterList;
-    }
-
-    private void processVepMrFov(List<ConsumeOCBCGiroFile> fovGiroFiles) {
-
-        Map<Long, List<ConsumeOCBCGiroFile>> groupedByFovVepMr = fovGiroFiles.stream()
-                .collect(Collectors.groupingBy(giroFile -> giroFile.getAffiliate().getId()));
-
-        for (Map.Entry<Long, List<ConsumeOCBCGiroFile>> entry : groupedByFovVepMr.entrySet()) {
-            Long affiliateId = entry.getKey();
-            List<ConsumeOCBCGiroFile> giroFilesForFovVepMr = entry.getValue();
-
-            Map<String, BigDecimal> totals = calculateIncentiveTotals(giroFilesForFovVepMr);
-
-            // Fetch Affiliate
-            Affiliate affiliate = affiliateDAO.findById(affiliateId)
-                    .orElseThrow(() -> new ServiceAppException(HttpStatus.BAD_REQUEST, ComcalError.CP58_AFFILIATE_NOT_FOUND.getCode() + affiliateId));
-
-            Long recipientId = 0L;
-            if (affiliate.getFov() != null) {
-                recipientId = affiliate.getFov().getId();
-            } else if (affiliate.getVep() != null) {
-                recipientId = affiliate.getVep().getId();
-            } else if (affiliate.getMr() != null) {
-                recipientId = affiliate.getMr().getId();
-            }
-
-            List<CommissionOCBCGiro> ocbcGiroList = commissionOCBCGiroDAO.findByCommissionReceiverTypeId(recipientId);
-
-            CommissionReceiverType commissionReceiverType = ocbcGiroList.get(0).getCommissionReceiverType();
-
-            CommissionCP58 commissionCP58 = commissionCP58DAO.findByRecipientIdAndRecipientTypeAndYears(recipientId, commissionReceiverType, Year.now().getValue() - 1);
-            if (commissionCP58 == null) {
-                commissionCP58 = new CommissionCP58();
-            }
-
-            switch (commissionReceiverType) {
-                case VEP:
-                    commissionCP58.setRecipientId(affiliate.getVep().getId());
-                    commissionCP58.setRecipientCode(affiliate.getVep().getCode());
-                    commissionCP58.setRecipientIdentificationNo(affiliate.getIdentificationNumber());
-                    break;
-                case FOV:
-                    commissionCP58.setRecipientId(affiliate.getFov().getId());
-                    commissionCP58.setRecipientCode(affiliate.getFov().getCode());
-                    commissionCP58.setRecipientIdentificationNo(affiliate.getIdentificationNumber() != null ? affiliate.getIdentificationNumber() : "");
-                    commissionCP58.setBusinessRegistrationNo(affiliate.getFov().getBusinessRegistrationNumber() != null ? affiliate.getIdentificationNumber() : "");
-                    break;
-                case MR:
-                    commissionCP58.setRecipientId(affiliate.getMr().getId());
-                    commissionCP58.setRecipientCode(affiliate.getMr().getCode());
-                    commissionCP58.setRecipientIdentificationNo(affiliate.getIdentificationNumber());
-                    break;
-                default:
-                    throw new ServiceAppException(HttpStatus.BAD_REQUEST, ComcalError.CP58_INVALID_RECIPIENT_TYPE.getCode() + commissionReceiverType);
-            }
-
-            commissionCP58.setRecipientName(affiliate.getName());
-            commissionCP58.setRecipientType(commissionReceiverType);
-            commissionCP58.setTotalReferralAmount(totals.getOrDefault("totalReferralFee", BigDecimal.ZERO));
-            commissionCP58.setTotalHouseIncentive(totals.getOrDefault("totalHouseIncentive", BigDecimal.ZERO));
-            commissionCP58.setTotalTourTravelPackageIncentive(totals.getOrDefault("totalTourTravelIncentive", BigDecimal.ZERO));
-            commissionCP58.setTotalOtherIncentive(totals.getOrDefault("totalOthers", BigDecimal.ZERO));
-            commissionCP58.setTotalVehicleIncentive(totals.getOrDefault("totalVehicleIncentive", BigDecimal.ZERO));
-            commissionCP58.setRecipientIncomeTaxNo("");
-            commissionCP58.setRecipientAddress(formatAddress(affiliate.getCorrespondingAddress()));
-            commissionCP58.setResidentInMalaysia(isAddressInMalaysia(affiliate.getCorrespondingAddress()));
-            commissionCP58.setYears(Year.now().getValue() - 1);
-
-            commissionCP58DAO.save(commissionCP58);
-        }
-    }
-
-    private void processBdmBdd(List<ConsumeOCBCGiroFile> companyGiroFiles) {
-
-        Map<Long, List<ConsumeOCBCGiroFile>> groupedByCompany = companyGiroFiles.stream()
-                .collect(Collectors.groupingBy(giroFile -> giroFile.getCompany().getId()));
-
-        for (Map.Entry<Long, List<ConsumeOCBCGiroFile>> entry : groupedByCompany.entrySet()) {
-            Long companyId = entry.getKey();
-            List<ConsumeOCBCGiroFile> giroFilesForFovVepMr = entry.getValue();
-
-            Map<String, BigDecimal> totals = calculateIncentiveTotals(giroFilesForFovVepMr);
-
-            List<CommissionOCBCGiro> ocbcGiroList = commissionOCBCGiroDAO.findByCommissionReceiverTypeId(companyId);
-
-            CommissionReceiverType commissionReceiverType = ocbcGiroList.get(0).getCommissionReceiverType();
-
-            Company company = companyDAO.findById(companyId)
-                    .orElseThrow(() -> new ServiceAppException(HttpStatus.BAD_REQUEST, ComcalError.CP58_AFFILIATE_NOT_FOUND.getCode(), companyId));
-
-            CommissionCP58 commissionCP58 = commissionCP58DAO.findByRecipientIdAndRecipientTypeAndYears(companyId, commissionReceiverType, Year.now().getValue() - 1);
-            if (commissionCP58 == null) {
-                commissionCP58 = new CommissionCP58();
-            }
-
-            commissionCP58.setRecipientId(companyId);
-            commissionCP58.setRecipientCode(company.getCode());
-            commissionCP58.setRecipientName(company.getName());
-            commissionCP58.setRecipientType(commissionReceiverType);
-            commissionCP58.setBusinessRegistrationNo(company.getNewBusinessRegNo());
-            commissionCP58.setTotalTrainingDevelopmentIncentive(totals.get("totalTrainingIncentive"));
-            commissionCP58.setTotalHouseIncentive(totals.get("totalHouseIncentive"));
-            commissionCP58.setTotalTourTravelPackageIncentive(totals.get("totalTourTravelIncentive"));
-            commissionCP58.setTotalOtherIncentive(totals.get("totalOthers"));
-            commissionCP58.setTotalVehicleIncentive(totals.get("totalVehicleIncentive"));
-            commissionCP58.setRecipientIncomeTaxNo(company.getCompanyOwner().getIncomeTaxNo());
-            commissionCP58.setRecipientAddress(formatAddress(company.getBranch().getAddress()));
-            commissionCP58.setResidentInMalaysia(isAddressInMalaysia(company.getBranch().getAddress()));
-            commissionCP58.setYears(Year.now().getValue() - 1);
-
-            commissionCP58DAO.save(commissionCP58);
-        }
-    }
-
-    private Map<String, BigDecimal> calculateIncentiveTotals(List<ConsumeOCBCGiroFile> giroFiles) {
-        Map<String, BigDecimal> totals = new HashMap<>();
-        totals.put("totalReferralFee", BigDecimal.ZERO);
-        totals.put("totalVehicleIncentive", BigDecimal.ZERO);
-        totals.put("totalHouseIncentive", BigDecimal.ZERO);
-        totals.put("totalTourTravelIncentive", BigDecimal.ZERO);
-        totals.put("totalOthers", BigDecimal.ZERO);
-        totals.put("totalTrainingIncentive", BigDecimal.ZERO);
-
-        for (ConsumeOCBCGiroFile giroFile : giroFiles) {
-            if (giroFile.getTotalReferralFee() != null) {
-                totals.put("totalReferralFee", totals.get("totalReferralFee").add(giroFile.getTotalReferralFee()));
-            }
-            if (giroFile.getTotalVehicleIncentive() != null) {
-                totals.put("totalVehicleIncentive", totals.get("totalVehicleIncentive").add(giroFile.getTotalVehicleIncentive()));
-            }
-            if (giroFile.getTotalHouseIncentive() != null) {
-                totals.put("totalHouseIncentive", totals.get("totalHouseIncentive").add(giroFile.getTotalHouseIncentive()));
-            }
-            if (giroFile.getTotalOthers() != null) {
-                totals.put("totalOthers", totals.get("totalOthers").add(giroFile.getTotalOthers()));
-            }
-            if (giroFile.getTotalTourTravelPackageIncentive() != null) {
-                totals.put("totalTourTravelIncentive", totals.get("totalTourTravelIncentive").add(giroFile.getTotalTourTravelPackageIncentive()));
-            }
-            if (giroFile.getTotalTrainingDevelopmentIncentive() != null) {
-                totals.put("totalTrainingIncentive", totals.get("totalTrainingIncentive").add(giroFile.getTotalTrainingDevelopmentIncentive()));
-            }
-        }
-        return totals;
-    }
-
-    private void processAdviser(List<ConsumeOCBCGiroFile> adviserGiroFiles) {
-
-        Map<Long, List<ConsumeOCBCGiroFile>> groupedByAdviser = adviserGiroFiles.stream()
-                .collect(Collectors.groupingBy(giroFile -> giroFile.getAdviser().getId()));
-
-        // Process each adviser
-
-        for (Map.Entry<Long, List<ConsumeOCBCGiroFile>> entry : groupedByAdviser.entrySet()) {
-            Long adviserId = entry.getKey();
-            List<ConsumeOCBCGiroFile> giroFilesForAdviser = entry.getValue();
-
-            Map<String, BigDecimal> totals = calculateIncentiveTotals(giroFilesForAdviser);
-
-            List<CommissionOCBCGiro> ocbcGiroList = commissionOCBCGiroDAO.findByCommissionReceiverTypeId(adviserId);
-
-            CommissionReceiverType commissionReceiverType = ocbcGiroList.get(0).getCommissionReceiverType();
-
-            Planner adviser = plannerDAO.findById(adviserId)
-                    .orElseThrow(() -> new ServiceAppException(HttpStatus.BAD_REQUEST, ComcalError.CP58_ADVISER_NOT_FOUND.getCode(), adviserId));
-
-            CommissionCP58 commissionCP58 = commissionCP58DAO.findByRecipientIdAndRecipientTypeAndYears(adviserId, commissionReceiverType, Year.now().getValue() - 1);
-            if (commissionCP58 == null) {
-                commissionCP58 = new CommissionCP58();
-            }
-
-            commissionCP58.setRecipientId(adviserId);
-            commissionCP58.setRecipientCode(adviser.getVkaCode());
-            commissionCP58.setRecipientName(adviser.getPreferredName());
-            commissionCP58.setRecipientType(commissionReceiverType);
-            commissionCP58.setRecipientIdentificationNo(adviser.getIdentificationNo());
-            commissionCP58.setTotalReferralAmount(totals.get("totalReferralFee"));
-            commissionCP58.setTotalHouseIncentive(totals.get("totalHouseIncentive"));
-            commissionCP58.setTotalTourTravelPackageIncentive(totals.get("totalTourTravelIncentive"));
-            commissionCP58.setTotalOtherIncentive(totals.get("totalOthers"));
-            commissionCP58.setTotalVehicleIncentive(totals.get("totalVehicleIncentive"));
-            commissionCP58.setRecipientIncomeTaxNo(adviser.getIncomeTaxNo());
-            commissionCP58.setRecipientAddress(formatAddress(adviser.getResidentialAddress()));
-            commissionCP58.setResidentInMalaysia(isAddressInMalaysia(adviser.getResidentialAddress()));
-            commissionCP58.setYears(Year.now().getValue() - 1);
-
-            commissionCP58DAO.save(commissionCP58);
-        }
-    }
-
-    private void generateReport(String reportPath, Map<String, Object> parameters, String outputFilePath, String format) throws IOException, JRException {
-        try (InputStream reportStream = Files.newInputStream(Paths.get(reportPath))) {
-            JasperReport jasperReport = JasperCompileManager.compileReport(reportStream);
-            JREmptyDataSource dataSource = new JREmptyDataSource();
-            JasperPrint jasperPrint = JasperFillManager.fillReport(jasperReport, parameters, dataSource);
-
-            // Export report based on the format
-            switch (format.toLowerCase()) {
-                case "pdf":
-
-                    File tempFile = File.createTempFile("report_", ".pdf");
-                    JasperExportManager.exportReportToPdfFile(jasperPrint, tempFile.getAbsolutePath());
-
-                    InputStream inputStream = Files.newInputStream(tempFile.toPath());
-                    baseSFTP.uploadFileToSFTP(inputStream, outputFilePath + ".pdf");
-
-                    if (tempFile.exists()) {
-                        tempFile.delete();
-                    }
-
-                    break;
-                case "excel":
-                    exportReportToExcel(jasperPrint, outputFilePath + ".xlsx");
-                    break;
-                default:
-                    throw new IllegalArgumentException("Unsupported format: " + format);
-            }
-        } catch (JSchException | SftpException e) {
-            throw new RuntimeException(e);
-        }
-    }
-
-
-    public Short isAddressInMalaysia(String jsonAddress) {
-        JsonObject addressObject = JsonParser.parseString(jsonAddress).getAsJsonObject();
-
-        String country = addressObject.has("country") ? addressObject.get("country").getAsString() : null;
-
-        if (MALAYSIA.equalsIgnoreCase(country)) {
-            return 1;
-        }
-
-        return 2;
-    }
-
-
-    private Map<String, String> extractTaxNoParts(String incomeTaxNo) {
-        Map<String, String> taxParts = new HashMap<>();
-        String taxNo1 = "";
-        String taxNo2 = "";
-
-        if (incomeTaxNo.startsWith("C1")) {
-            taxNo1 = "C1";
-            taxNo2 = incomeTaxNo.substring(2);
-        } else {
-            StringBuilder letters = new StringBuilder();
-            StringBuilder digits = new StringBuilder();
-
-            for (char c : incomeTaxNo.toCharArray()) {
-                if (Character.isLetter(c)) {
-                    letters.append(c);
-                } else if (Character.isDigit(c)) {
-                    digits.append(c);
-                }
-            }
-
-            taxNo1 = letters.toString();
-            taxNo2 = digits.toString();
-        }
-
-        taxParts.put("taxNo1", taxNo1);
-        taxParts.put("taxNo2", taxNo2);
-
-        return taxParts;
-    }
-
-    private void exportReportToExcel(JasperPrint jasperPrint, String outputFilePath) throws JRException, JSchException, SftpException {
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        JRXlsxExporter exporter = new JRXlsxExporter();
-        exporter.setExporterInput(new SimpleExporterInput(jasperPrint));
-        exporter.setExporterOutput(new SimpleOutputStreamExporterOutput(byteArrayOutputStream));
-
-        SimpleXlsxReportConfiguration configuration = new SimpleXlsxReportConfiguration();
-        configuration.setDetectCellType(true);
-        configuration.setOnePagePerSheet(false);
-        configuration.setRemoveEmptySpaceBetweenRows(true);
-        configuration.setWhitePageBackground(false);
-
-        exporter.setConfiguration(configuration);
-        exporter.exportReport();
-
-        InputStream inputStream = new ByteArrayInputStream(byteArrayOutputStream.toByteArray());
-        baseSFTP.uploadFileToSFTP(inputStream, outputFilePath);
-    }
-
-    private void distributeFiles(String sourceDirPath, String targetDirPath, Pattern pattern, CommissionReceiverType type) throws IOException {
-        Path sourceDir = Paths.get(sourceDirPath);
-        Path targetDir = Paths.get(targetDirPath);
-
-        switch (type) {
-            case ADVISER:
-                sourceDir = Paths.get(sourceDirPath + "ADVISER");
-                targetDir = Paths.get(targetDir + "/ADVISER");
-                break;
-            case BDM:
-                sourceDir = Paths.get(sourceDirPath + "BDM");
-                targetDir = Paths.get(targetDir + "/BDM");
-                break;
-            case BDD:
-                sourceDir = Paths.get(sourceDirPath + "BDD");
-                targetDir = Paths.get(targetDir + "/BDD");
-                break;
-            default:
-                throw new ServiceAppException(HttpStatus.BAD_REQUEST, ComcalError.CP58_INVALID_RECIPIENT_TYPE.getCode() + type);
-        }
-        createDirectoryIfNotExists(sourceDir);
-        try (Stream<Path> filesStream = Files.list(sourceDir)) {
-            List<String> matchedFiles = findMatchingFiles(filesStream, pattern);
-
-            if (matchedFiles.isEmpty()) {
-                log.info("No files found in: " + sourceDir);
-            }
-            createDirectoryIfNotExists(targetDir);
-
-            for (String fileName : matchedFiles) {
-                Path sourceFile = sourceDir.resolve(fileName);
-                Path targetFile = targetDir.resolve(fileName);
-
-                copyFile(sourceFile, targetFile);
-                saveDistributedCP58(targetFile, type);
-            }
-
-            log.info("Processed " + matchedFiles.size() + " files from: " + sourceDir);
-        }
-    }
-
-    private void archiveCP58(String sourceDirPath, String targetDirPath, Pattern pattern, CommissionReceiverType type) throws IOException {
-        Path sourceDir = Paths.get(sourceDirPath);
-        Path targetDir = Paths.get(targetDirPath);
-
-        switch (type) {
-            case ADVISER:
-                sourceDir = Paths.get(sourceDirPath + "ADVISER");
-                targetDir = Paths.get(targetDir + "/ADVISER");
-                break;
-            case BDM:
-                sourceDir = Paths.get(sourceDirPath + "BDM");
-                targetDir = Paths.get(targetDir + "/BDM");
-                break;
-            case BDD:
-                sourceDir = Paths.get(sourceDirPath + "BDD");
-                targetDir = Paths.get(targetDir + "/BDD");
-                break;
-            default:
-                throw new ServiceAppException(HttpStatus.BAD_REQUEST, ComcalError.CP58_INVALID_RECIPIENT_TYPE.getCode() + type);
-        }
-
-        try (Stream<Path> filesStream = Files.list(sourceDir)) {
-            List<String> matchedFiles = findMatchingFiles(filesStream, pattern);
-
-            if (matchedFiles.isEmpty()) {
-                log.info("No files found in: " + sourceDir);
-            }
-            createDirectoryIfNotExists(targetDir);
-
-            for (String fileName : matchedFiles) {
-                Path sourceFile = sourceDir.resolve(fileName);
-                Path targetFile = targetDir.resolve(fileName);
-                copyFile(sourceFile, targetFile);
-                Files.delete(sourceFile);
-            }
-        }
-    }
-
-    private void saveDistributedCP58(Path filePath, CommissionReceiverType type) {
-        DistributeCP58File distributeCP58File = new DistributeCP58File();
-        String fileName = filePath.getFileName().toString();
-        String[] fileNameParts = fileName.split("_");
-        String code = fileNameParts[0];
-
-        switch (type) {
-            case ADVISER:
-                Planner planner = plannerDAO.findByVkaCode(code);
-                distributeCP58File.setReceivedType(CommissionReceiverType.ADVISER);
-                distributeCP58File.setAdviser(planner);
-                //Send Notification to Adviser
-                notificationService.sendPaymentVoucherDistributionComplete(planner.getId(), planner);
-                break;
-            case BDM:
-                distributeCP58File.setReceivedType(CommissionReceiverType.BDM);
-                distributeCP58File.setCompany(
-                        companyDAO.findByCode(code)
-                );
-                break;
-            case BDD:
-                distributeCP58File.setReceivedType(CommissionReceiverType.BDD);
-                distributeCP58File.setCompany(
-                        companyDAO.findByCode(code)
-                );
-                break;
-            default:
-                throw new ServiceAppException(HttpStatus.BAD_REQUEST, ComcalError.CP58_INVALID_RECIPIENT_TYPE.getCode() + type);
-        }
-        distributeCP58File.setName(fileName);
-        distributeCP58File.setPath(filePath.toString());
-        distributeCP58FileDAO.save(distributeCP58File);
-
-    }
-
-    private void createDirectoryIfNotExists(Path directory) throws IOException {
-        if (!Files.exists(directory)) {
-            Files.createDirectories(directory);
-            log.info("Created directory: " + directory);
-        }
-    }
-
-    private void copyFile(Path sourceFile, Path targetFile) throws IOException {
-        Files.copy(sourceFile, targetFile, StandardCopyOption.REPLACE_EXISTING);
-        log.info("File copied from " + sourceFile + " to " + targetFile);
-    }
-
-    private List<String> findMatchingFiles(Stream<Path> filesStream, Pattern pattern) {
-        return filesStream.map(path -> path.getFileName().toString())
-                .filter(fileName -> pattern.matcher(fileName).matches())
-                .collect(Collectors.toList());
-    }
-}
-
+import lombok.extern.slf4j.Slf4j;
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JasperReport;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@Slf4j
+@Service
+public class CP58Service extends BaseOssFileConverter {
+
+    public static final String MALAYSIA = "MALAYSIA";
+
+    /**
+     * FULL rebuilds every total, RECONCILE rebuilds and reports totals that
+     * drifted from the applied deltas, DELTA adds giro rows past the watermark.
+     */
+    private enum GiroIngestionMode {
+        FULL, RECONCILE, DELTA
+    }
+
+    private static final CommissionReceiverType[] REPORT_RECIPIENT_TYPES = {
+            CommissionReceiverType.ADVISER, CommissionReceiverType.BDM, CommissionReceiverType.BDD,
+            CommissionReceiverType.VEP, CommissionReceiverType.FOV, CommissionReceiverType.MR};
+    private static final CommissionReceiverType[] DISTRIBUTED_RECIPIENT_TYPES = {
+            CommissionReceiverType.ADVISER, CommissionReceiverType.BDD, CommissionReceiverType.BDM};
+    private final CommissionCP58JobHelper commissionCP58JobHelper;
+    private final BaseSFTP baseSFTP;
+    private final CommissionCP58StreamDAO commissionCP58StreamDAO;
+    private final CP58RecipientBatchDAO cp58RecipientBatchDAO;
+    private final CP58BatchWriteDAO cp58BatchWriteDAO;
+    private final ConsumeOCBCGiroAggregateDAO consumeOCBCGiroAggregateDAO;
+    private final CP58NotificationDispatcher cp58NotificationDispatcher;
+    private final CP58TemplateCache cp58TemplateCache;
+    private final CP58GenerationEngine cp58GenerationEngine;
+    private final CP58FingerprintService cp58FingerprintService;
+    private final boolean incrementalGeneration;
+    private final CommissionCP58GiroWatermarkDAO commissionCP58GiroWatermarkDAO;
+    private final long giroFullReconcileIntervalDays;
+    private final CP58ConsolidatedWorkbookExporter cp58ConsolidatedWorkbookExporter;
+    private final CP58DistributionManifest cp58DistributionManifest;
+    private final CP58FileDistributor cp58FileDistributor;
+    private final CP58GenerationCheckpoints cp58GenerationCheckpoints;
+    private final TransactionTemplate transactionTemplate;
+    private final CP58Metrics cp58Metrics;
+    private final CP58AddressParser cp58AddressParser;
+    private final CP58JobRuns cp58JobRuns;
+    private final int generationChunkSize;
+
+    public CP58Service(ConsumeOCBCGiroAggregateDAO consumeOCBCGiroAggregateDAO, BaseSFTP baseSFTP,
+                       OssTemplateService ossTemplateService, CommissionCP58JobHelper commissionCP58JobHelper,
+                       CP58NotificationDispatcher cp58NotificationDispatcher, CP58TemplateCache cp58TemplateCache,
+                       CP58GenerationEngine cp58GenerationEngine, CommissionCP58StreamDAO commissionCP58StreamDAO,
+                       CP58RecipientBatchDAO cp58RecipientBatchDAO, CP58BatchWriteDAO cp58BatchWriteDAO,
+                       CP58FingerprintService cp58FingerprintService,
+                       @Value("${cp58.generation.incremental:true}") boolean incrementalGeneration,
+                       CommissionCP58GiroWatermarkDAO commissionCP58GiroWatermarkDAO,
+                       @Value("${cp58.giro.full-reconcile-interval-days:7}") long giroFullReconcileIntervalDays,
+                       CP58ConsolidatedWorkbookExporter cp58ConsolidatedWorkbookExporter,
+                       CP58DistributionManifest cp58DistributionManifest, CP58FileDistributor cp58FileDistributor,
+                       CP58GenerationCheckpoints cp58GenerationCheckpoints, PlatformTransactionManager transactionManager,
+                       @Value("${cp58.generation.chunk-size:500}") int generationChunkSize,
+                       CP58Metrics cp58Metrics, CP58AddressParser cp58AddressParser,
+                       CP58JobRuns cp58JobRuns) {
+        this.consumeOCBCGiroAggregateDAO = consumeOCBCGiroAggregateDAO;
+        this.baseSFTP = baseSFTP;
+        this.commissionCP58JobHelper = commissionCP58JobHelper;
+        this.cp58NotificationDispatcher = cp58NotificationDispatcher;
+        this.cp58TemplateCache = cp58TemplateCache;
+        this.cp58GenerationEngine = cp58GenerationEngine;
+        this.commissionCP58StreamDAO = commissionCP58StreamDAO;
+        this.cp58RecipientBatchDAO = cp58RecipientBatchDAO;
+        this.cp58BatchWriteDAO = cp58BatchWriteDAO;
+        this.cp58FingerprintService = cp58FingerprintService;
+        this.incrementalGeneration = incrementalGeneration;
+        this.commissionCP58GiroWatermarkDAO = commissionCP58GiroWatermarkDAO;
+        this.giroFullReconcileIntervalDays = giroFullReconcileIntervalDays;
+        this.cp58ConsolidatedWorkbookExporter = cp58ConsolidatedWorkbookExporter;
+        this.cp58DistributionManifest = cp58DistributionManifest;
+        this.cp58FileDistributor = cp58FileDistributor;
+        this.cp58GenerationCheckpoints = cp58GenerationCheckpoints;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.generationChunkSize = Math.max(1, generationChunkSize);
+        this.cp58Metrics = cp58Metrics;
+        this.cp58AddressParser = cp58AddressParser;
+        this.cp58JobRuns = cp58JobRuns;
+        this.ossTemplateService = ossTemplateService;
+    }
+
+    public GenericResponseVo generateCP58() {
+        return generateCP58(false);
+    }
+
+    /**
+     * Runs without an enclosing transaction: giro processing commits on its
+     * own, and rendering commits fingerprints and a checkpoint after every
+     * chunk of {@code cp58.generation.chunk-size} recipients. A run that
+     * fails part way is resumed from those checkpoints by the next call.
+     * With {@code cp58.sharding.enabled} the checkpoints are shards that other
+     * nodes claim as well; this call returns once every shard is finished.
+     *
+     * @param forceFull render every recipient even when its figures and the
+     *                  template are unchanged since the last successful upload,
+     *                  and ignore checkpoints left by an unfinished run
+     */
+    public GenericResponseVo generateCP58(boolean forceFull) {
+        return generateCP58(forceFull, null);
+    }
+
+    /**
+     * @param runId the {@link CommissionCP58JobRun} that every node rendering
+     *              a shard of this run counts its recipients towards, or
+     *              {@code null} to record no progress
+     */
+    public GenericResponseVo generateCP58(boolean forceFull, String runId) {
+        GenericResponseVo genericResponseVo = new GenericResponseVo();
+        CP58Metrics.Snapshot metricsBefore = cp58Metrics.snapshot();
+        try {
+            String templatePath = cp58TemplateCache.buildTemplatePath(CP58TemplateCache.TEMPLATE_NAME);
+            JasperReport jasperReport = cp58TemplateCache.getReport(templatePath);
+            String templateHash = cp58TemplateCache.getTemplateHash(templatePath);
+
+            long giroStart = cp58Metrics.start();
+            transactionTemplate.executeWithoutResult(status -> processGiroData());
+            cp58Metrics.stop(CP58Metrics.GIRO_PROCESSING, giroStart);
+
+            int year = Year.now().getValue() - 1;
+            Map<String, CommissionCP58Fingerprint> fingerprints = cp58FingerprintService.findByYears(year);
+
+            // Bundles are only uploaded at the end of the run, so progress cannot be committed per chunk
+            boolean commitChunks = !cp58GenerationEngine.isBundleOutput();
+            List<CommissionCP58Checkpoint> shards = commitChunks
+                    ? cp58GenerationCheckpoints.prepare(year, REPORT_RECIPIENT_TYPES, forceFull, forceFull, runId)
+                    : cp58GenerationCheckpoints.createTransient(year, REPORT_RECIPIENT_TYPES, forceFull, runId);
+
+            long remaining = 0;
+            for (CommissionCP58Checkpoint shard : shards) {
+                if (shard.getStatus() != CommissionCP58Checkpoint.Status.COMPLETE) {
+                    remaining += commissionCP58StreamDAO.countRemaining(shard);
+                }
+            }
+            cp58JobRuns.track(runId, remaining);
+
+            CP58GenerationResult result;
+            ExecutorService localWorkers = startLocalShardWorkers(commitChunks);
+            try (CP58GenerationPipeline pipeline = cp58GenerationEngine.open(jasperReport)) {
+                if (commitChunks) {
+                    // Keep claiming until every shard is done, including ones whose owner stopped renewing its lease
+                    do {
+                        renderClaimedShards(pipeline, year, cp58GenerationCheckpoints.getNodeId(), templateHash, fingerprints);
+                    } while (!cp58GenerationCheckpoints.awaitFinished(year));
+                } else {
+                    for (CommissionCP58Checkpoint shard : shards) {
+                        renderShard(pipeline, shard, templateHash, fingerprints, false);
+                    }
+                }
+                result = pipeline.awaitCompletion();
+                if (!commitChunks) {
+                    cp58JobRuns.setProgress(runId, result.getSucceeded() + result.getSkipped(), result.getFailureCount());
+                }
+            } finally {
+                if (localWorkers != null) {
+                    localWorkers.shutdownNow();
+                }
+            }
+            if (!commitChunks) {
+                List<CP58GenerationResult.Success> successes = result.getSuccesses();
+                transactionTemplate.executeWithoutResult(status -> cp58FingerprintService.saveAll(fingerprints, successes, year));
+            } else if (cp58GenerationCheckpoints.isShardingEnabled()) {
+                for (CommissionCP58Checkpoint shard : cp58GenerationCheckpoints.findByYears(year)) {
+                    if (shard.getStatus() == CommissionCP58Checkpoint.Status.FAILED) {
+                        result.recordFailure(shard.getRecipientType(), "shard " + shard.getShardIndex(),
+                                new IllegalStateException("CP58 shard finished with failed recipients"));
+                    }
+                }
+            }
+            if (cp58ConsolidatedWorkbookExporter.isEnabled()) {
+                cp58ConsolidatedWorkbookExporter.exportAll(REPORT_RECIPIENT_TYPES, year, result);
+            }
+            cp58Metrics.recordRecipients(result);
+            log.info("CP58 generation rendered " + result.getSucceeded() + " recipients, skipped "
+                    + result.getSkipped() + " unchanged, " + result.getFailures().size() + " failed");
+            if (result.hasFailures()) {
+                String errorMessage = String.format(ComcalError.CP58_JASPER_REPORT_EXPORT_ERROR.getDescription(),
+                        "CP58 Service", result.getFailureSummary());
+                log.error(errorMessage);
+                genericResponseVo.setSuccess(false);
+                genericResponseVo.setCode(ComcalError.CP58_JASPER_REPORT_EXPORT_ERROR.getCode());
+                genericResponseVo.setMessage(errorMessage);
+                commissionCP58JobHelper.updateCP58Job(
+                        1L, CommissionCP58JobType.COMMISSION_CP58_JOB_TYPE_1,
+                        JobStatus.FAILED, false);
+            } else {
+                cp58GenerationCheckpoints.clear(year);
+                commissionCP58JobHelper.updateCP58Job(
+                        1L, CommissionCP58JobType.COMMISSION_CP58_JOB_TYPE_1,
+                        JobStatus.COMPLETE, false);
+                genericResponseVo.setSuccess(true);
+
+                return genericResponseVo;
+            }
+        } catch (IOException e) {
+            String errorMessage = String.format(ComcalError.CP58_PATH_TEMPLATE_ERROR.getDescription(),
+                    "CP58 Service", e);
+            log.error(errorMessage);
+            genericResponseVo.setSuccess(false);
+            genericResponseVo.setCode(ComcalError.CP58_PATH_TEMPLATE_ERROR.getCode());
+            genericResponseVo.setMessage(errorMessage);
+            // Update cp58 job table
+            commissionCP58JobHelper.updateCP58Job(
+                    1L, CommissionCP58JobType.COMMISSION_CP58_JOB_TYPE_1,
+                    JobStatus.FAILED, false);
+        } catch (JRException e) {
+            String errorMessage = String.format(ComcalError.CP58_JASPER_REPORT_EXPORT_ERROR.getDescription(),
+                    "CP58 Service", e);
+            log.error(errorMessage);
+            genericResponseVo.setSuccess(false);
+            genericResponseVo.setCode(ComcalError.CP58_JASPER_REPORT_EXPORT_ERROR.getCode());
+            genericResponseVo.setMessage(errorMessage);
+            commissionCP58JobHelper.updateCP58Job(
+                    1L, CommissionCP58JobType.COMMISSION_CP58_JOB_TYPE_1,
+                    JobStatus.FAILED, false);
+        } catch (Exception e) {
+            String errorMessage = String.format(ComcalError.CP58_GENERAL_ERROR.getDescription(),
+                    "CP58 Service", e);
+            log.error(errorMessage);
+            genericResponseVo.setSuccess(false);
+            genericResponseVo.setCode(ComcalError.CALCULATE_GENERAL_EXCEPTION.getCode());
+            genericResponseVo.setMessage(errorMessage);
+            commissionCP58JobHelper.updateCP58Job(
+                    1L, CommissionCP58JobType.COMMISSION_CP58_JOB_TYPE_1,
+                    JobStatus.FAILED, false);
+        } finally {
+            String metricsSummary = cp58Metrics.summarySince(metricsBefore);
+            cp58JobRuns.recordMetricsSummary(runId, metricsSummary);
+            log.info("CP58 generation metrics: " + metricsSummary);
+        }
+        if (!genericResponseVo.getSuccess() || genericResponseVo.getCode() != null) {
+            throw new ServiceAppException(HttpStatus.BAD_REQUEST, genericResponseVo.getCode(), genericResponseVo.getMessage());
+        } else {
+            return genericResponseVo;
+        }
+    }
+
+    @Transactional(rollbackFor = Exception.class)
+    public GenericResponseVo distributeCP58() {
+        GenericResponseVo genericResponseVo = new GenericResponseVo();
+
+        String cp58PatternString = "\\w+_[A-Za-z0-9]+_\\d{4}(0[1-9]|1[0-2])(0[1-9]|[12]\\d|3[01])\\.pdf";
+        Pattern cp58FilePattern = Pattern.compile(cp58PatternString);
+
+        String cp58OutDirectory = baseSFTP.Cp58Directory() + "OUT/PDF/";
+        String distributedCP58Directory = baseSFTP.distributedCP58Directory();
+        String archivedCP58Directory = baseSFTP.archivedCP58Directory();
+
+        long distributionStart = cp58Metrics.start();
+        try {
+
+            List<DistributionSource> sources = new ArrayList<>(DISTRIBUTED_RECIPIENT_TYPES.length);
+            for (CommissionReceiverType type : DISTRIBUTED_RECIPIENT_TYPES) {
+                sources.add(resolveDistributionSource(cp58OutDirectory, distributedCP58Directory, archivedCP58Directory,
+                        cp58FilePattern, type));
+            }
+
+            distributeFiles(sources, cp58FilePattern);
+
+            //Archive the cp58
+            archiveCP58(sources);
+            cp58Metrics.stop(CP58Metrics.DISTRIBUTION, distributionStart);
+
+            commissionCP58JobHelper.updateCP58Job(
+                    2L, CommissionCP58JobType.COMMISSION_CP58_JOB_TYPE_2,
+                    JobStatus.COMPLETE, false);
+            genericResponseVo.setSuccess(true);
+
+        } catch (IOException e) {
+            String errorMessage = String.format(ComcalError.DISTRIBUTE_CP58_NOT_FOUND.getDescription(),
+                    "Distribute CP58 Service", e);
+            log.error(errorMessage);
+            genericResponseVo.setSuccess(false);
+            genericResponseVo.setCode(ComcalError.DISTRIBUTE_CP58_NOT_FOUND.getCode());
+            genericResponseVo.setMessage(errorMessage);
+            commissionCP58JobHelper.updateCP58Job(
+                    2L, CommissionCP58JobType.COMMISSION_CP58_JOB_TYPE_2,
+                    JobStatus.FAILED, false);
+        } catch (Exception e) {
+            String errorMessage = String.format(ComcalError.DISTRIBUTE_CP58_GENERAL_ERROR.getDescription(),
+                    "Distribute CP58 Service", e);
+            log.error(errorMessage);
+            genericResponseVo.setSuccess(false);
+            genericResponseVo.setCode(ComcalError.DISTRIBUTE_CP58_GENERAL_ERROR.getCode());
+            genericResponseVo.setMessage(errorMessage);
+            commissionCP58JobHelper.updateCP58Job(
+                    2L, CommissionCP58JobType.COMMISSION_CP58_JOB_TYPE_2,
+                    JobStatus.FAILED, false);
+        }
+
+        return genericResponseVo;
+    }
+
+    public static String formatAddress(String jsonAddress) {
+        return CP58AddressParser.read(jsonAddress).getFormattedAddress();
+    }
+
+    /**
+     * Renders shards of the current year claimed from the checkpoint table
+     * until none is left to claim. The node that starts a run does the same
+     * through {@link #generateCP58(boolean, String)}; other nodes
+     * call this from {@link CP58ShardWorker}.
+     *
+     * @return number of shards worked on
+     */
+    public int processAvailableShards(String worker) throws IOException, JRException, InterruptedException {
+        int year = Year.now().getValue() - 1;
+        CommissionCP58Checkpoint shard = cp58GenerationCheckpoints.claim(year, worker);
+        if (shard == null) {
+            return 0;
+        }
+
+        String templatePath = cp58TemplateCache.buildTemplatePath(CP58TemplateCache.TEMPLATE_NAME);
+        JasperReport jasperReport = cp58TemplateCache.getReport(templatePath);
+        String templateHash = cp58TemplateCache.getTemplateHash(templatePath);
+        Map<String, CommissionCP58Fingerprint> fingerprints = cp58FingerprintService.findByYears(year);
+
+        int shards = 0;
+        try (CP58GenerationPipeline pipeline = cp58GenerationEngine.open(jasperReport)) {
+            do {
+                renderShard(pipeline, shard, templateHash, fingerprints, true);
+                shards++;
+            } while ((shard = cp58GenerationCheckpoints.claim(year, worker)) != null);
+            CP58GenerationResult result = pipeline.awaitCompletion();
+            log.info(worker + " rendered " + result.getSucceeded() + " CP58 recipients in " + shards + " shards, skipped "
+                    + result.getSkipped() + " unchanged, " + result.getFailureCount() + " failed");
+        }
+        return shards;
+    }
+
+    private void renderClaimedShards(CP58GenerationPipeline pipeline, int year, String worker, String templateHash,
+                                     Map<String, CommissionCP58Fingerprint> fingerprints) throws InterruptedException {
+        CommissionCP58Checkpoint shard;
+        while ((shard = cp58GenerationCheckpoints.claim(year, worker)) != null) {
+            renderShard(pipeline, shard, templateHash, fingerprints, true);
+        }
+    }
+
+    private ExecutorService startLocalShardWorkers(boolean commitChunks) {
+        int workers = cp58GenerationCheckpoints.getLocalWorkers();
+        if (!commitChunks || workers == 0) {
+            return null;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        for (int i = 1; i <= workers; i++) {
+            String worker = cp58GenerationCheckpoints.getNodeId() + "#" + i;
+            executor.execute(() -> {
+                try {
+                    // Waits a poll interval before each pass, so the starting node claims first
+                    while (!cp58GenerationCheckpoints.awaitFinished(Year.now().getValue() - 1)) {
+                        processAvailableShards(worker);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    log.error("Local CP58 shard worker " + worker + " stopped", e);
+                }
+            });
+        }
+        return executor;
+    }
+
+    private void renderShard(CP58GenerationPipeline pipeline, CommissionCP58Checkpoint shard, String templateHash,
+                             Map<String, CommissionCP58Fingerprint> fingerprints, boolean commitChunks) throws InterruptedException {
+        CP58GenerationResult result = pipeline.getResult();
+        CommissionReceiverType type = shard.getRecipientType();
+        int year = shard.getYears();
+        boolean skipUnchanged = incrementalGeneration && !Boolean.TRUE.equals(shard.getForceFull());
+
+        // The checkpoint only moves while every chunk so far went through, so failed recipients are retried
+        boolean advancing = true;
+        long lastId = shard.getLastCp58Id();
+        List<CommissionCP58> chunk;
+        while (!(chunk = commissionCP58StreamDAO.findChunk(shard, lastId, generationChunkSize)).isEmpty()) {
+            int successMark = result.getSucceeded();
+            int skippedMark = result.getSkipped();
+            int failureMark = result.getFailureCount();
+
+            for (CommissionCP58 cp58 : chunk) {
+                long buildStart = cp58Metrics.start();
+                Map<String, Object> parameters = buildParameters(cp58, type);
+                cp58Metrics.stop(CP58Metrics.PARAMETERS_BUILD, buildStart);
+                String fingerprint = cp58FingerprintService.fingerprint(parameters, templateHash);
+
+                CommissionCP58Fingerprint previous = fingerprints.get(CP58FingerprintService.key(type, cp58.getRecipientCode()));
+                if (skipUnchanged && previous != null && fingerprint.equals(previous.getFingerprint())) {
+                    result.recordSkipped();
+                    continue;
+                }
+                pipeline.submit(parameters, fingerprint);
+            }
+            lastId = chunk.get(chunk.size() - 1).getId();
+
+            if (commitChunks) {
+                pipeline.drain();
+                List<CP58GenerationResult.Success> successes = result.getSuccessesSince(successMark);
+                Set<String> failedTypes = cp58DistributionManifest.write(successes, result);
+                successes.removeIf(success -> failedTypes.contains(success.getType()));
+                advancing &= result.getFailureCount() == failureMark;
+
+                long checkpointId = advancing ? lastId : shard.getLastCp58Id();
+                // Every recipient of the chunk was skipped, rendered or failed by now
+                long processed = successes.size() + result.getSkipped() - skippedMark;
+                long failed = chunk.size() - processed;
+                Boolean leaseHeld = transactionTemplate.execute(status -> {
+                    cp58FingerprintService.saveAll(fingerprints, successes, year);
+                    if (cp58GenerationCheckpoints.advance(shard, checkpointId)) {
+                        cp58JobRuns.addProgress(shard.getRunId(), processed, failed);
+                        return true;
+                    }
+                    // Another node owns the shard now and resumes from the last checkpoint
+                    status.setRollbackOnly();
+                    return false;
+                });
+                if (!Boolean.TRUE.equals(leaseHeld)) {
+                    return;
+                }
+            } else {
+                // Only this pipeline renders the run, so its running totals are the run's
+                cp58JobRuns.setProgress(shard.getRunId(), result.getSucceeded() + result.getSkipped(), result.getFailureCount());
+            }
+        }
+        if (commitChunks) {
+            cp58GenerationCheckpoints.finish(shard, !advancing);
+        }
+    }
+
+    private void processGiroData() {
+
+        int currentYear = Year.now().getValue();
+        Long maxGiroFileId = consumeOCBCGiroAggregateDAO.findMaxGiroFileId(currentYear);
+        if (maxGiroFileId == null) {
+            log.info("No giro files found for " + currentYear);
+            return;
+        }
+
+        CommissionCP58GiroWatermark watermark = commissionCP58GiroWatermarkDAO.findByFileYear(currentYear)
+                .orElseGet(CommissionCP58GiroWatermark::new);
+        LocalDateTime now = LocalDateTime.now();
+
+        GiroIngestionMode mode;
+        if (watermark.getLastGiroFileId() == null || watermark.getLastFullReconcileAt() == null) {
+            mode = GiroIngestionMode.FULL;
+        } else if (watermark.getLastFullReconcileAt().plusDays(giroFullReconcileIntervalDays).isBefore(now)) {
+            mode = GiroIngestionMode.RECONCILE;
+        } else {
+            mode = GiroIngestionMode.DELTA;
+        }
+
+        long afterGiroFileId = mode == GiroIngestionMode.DELTA ? watermark.getLastGiroFileId() : 0L;
+        if (afterGiroFileId >= maxGiroFileId) {
+            log.info("No new giro files since id " + afterGiroFileId + " for " + currentYear);
+            return;
+        }
+        log.info("Processing giro files of " + currentYear + " in " + mode + " mode, ids " + afterGiroFileId + " to " + maxGiroFileId);
+
+        //process recipient giro to database
+        processAdviser(consumeOCBCGiroAggregateDAO.sumAdviserTotalsByFileYear(currentYear, afterGiroFileId, maxGiroFileId), mode);
+        processBdmBdd(consumeOCBCGiroAggregateDAO.sumCompanyTotalsByFileYear(currentYear, afterGiroFileId, maxGiroFileId), mode);
+        processVepMrFov(consumeOCBCGiroAggregateDAO.sumAffiliateTotalsByFileYear(currentYear, afterGiroFileId, maxGiroFileId), mode);
+
+        watermark.setFileYear(currentYear);
+        watermark.setLastGiroFileId(maxGiroFileId);
+        if (mode != GiroIngestionMode.DELTA) {
+            watermark.setLastFullReconcileAt(now);
+        }
+        watermark.setUpdatedAt(now);
+        commissionCP58GiroWatermarkDAO.save(watermark);
+    }
+
+    static Map<String, Object> buildParameters(CommissionCP58 cp58, CommissionReceiverType type) {
+        Map<String, Object> parameters = new HashMap<>();
+
+        parameters.put("identificationId", cp58.getRecipientIdentificationNo() != null ? cp58.getRecipientIdentificationNo() : "");
+        parameters.put("commission", BigDecimal.valueOf(0));
+        parameters.put("vehicle", cp58.getTotalVehicleIncentive() != null ? cp58.getTotalVehicleIncentive() : BigDecimal.valueOf(0));
+        parameters.put("house", cp58.getTotalHouseIncentive() != null ? cp58.getTotalHouseIncentive() : BigDecimal.valueOf(0));
+        parameters.put("travel", cp58.getTotalTourTravelPackageIncentive() != null ? cp58.getTotalTourTravelPackageIncentive() : BigDecimal.valueOf(0));
+        parameters.put("others1", cp58.getTotalReferralAmount() != null ? cp58.getTotalReferralAmount() : BigDecimal.valueOf(0));
+        parameters.put("training", cp58.getTotalTrainingDevelopmentIncentive() != null ? cp58.getTotalTrainingDevelopmentIncentive() : BigDecimal.valueOf(0));
+        parameters.put("others2", cp58.getTotalOtherIncentive() != null ? cp58.getTotalOtherIncentive() : BigDecimal.valueOf(0));
+
+        Map<String, String> taxParts = extractTaxNoParts(cp58.getRecipientIncomeTaxNo() != null ? cp58.getRecipientIncomeTaxNo() : "");
+        parameters.put("taxNo1", taxParts.get("taxNo1"));
+        parameters.put("taxNo2", taxParts.get("taxNo2"));
+
+        parameters.put("residentInMalaysia", cp58.getResidentInMalaysia() != null ? cp58.getResidentInMalaysia() : "");
+        parameters.put("recipientName", cp58.getRecipientName() != null ? cp58.getRecipientName() : "");
+        parameters.put("recipientAddress", cp58.getRecipientAddress() != null ? cp58.getRecipientAddress() : "");
+        parameters.put("year", cp58.getYears() + 1);
+        parameters.put("code", cp58.getRecipientCode());
+        parameters.put("type", type);
+
+        return parameters;
+    }
+
+    private void processVepMrFov(Map<Long, CP58IncentiveTotals> totalsByAffiliate, GiroIngestionMode mode) {
+
+        int years = Year.now().getValue() - 1;
+        for (List<Long> affiliateIds : cp58RecipientBatchDAO.partition(totalsByAffiliate.keySet())) {
+            // Fetch Affiliate
+            Map<Long, Affiliate> affiliates = cp58RecipientBatchDAO.findAffiliates(affiliateIds);
+            Map<Long, Long> recipientIdByAffiliate = new HashMap<>();
+
+            for (Long affiliateId : affiliateIds) {
+                Affiliate affiliate = affiliates.get(affiliateId);
+                if (affiliate == null) {
+                    throw new ServiceAppException(HttpStatus.BAD_REQUEST, ComcalError.CP58_AFFILIATE_NOT_FOUND.getCode() + affiliateId);
+                }
+
+                Long recipientId = 0L;
+                if (affiliate.getFov() != null) {
+                    recipientId = affiliate.getFov().getId();
+                } else if (affiliate.getVep() != null) {
+                    recipientId = affiliate.getVep().getId();
+                } else if (affiliate.getMr() != null) {
+                    recipientId = affiliate.getMr().getId();
+                }
+                recipientIdByAffiliate.put(affiliateId, recipientId);
+            }
+
+            Map<Long, CommissionReceiverType> receiverTypes = cp58RecipientBatchDAO.findReceiverTypes(recipientIdByAffiliate.values());
+            Map<CommissionReceiverType, Map<Long, CommissionCP58>> existingCP58 =
+                    cp58RecipientBatchDAO.findCommissionCP58(recipientIdByAffiliate.values(), years);
+
+            List<CommissionCP58> commissionCP58List = new ArrayList<>(affiliateIds.size());
+            for (Long affiliateId : affiliateIds) {
+                CP58IncentiveTotals totals = totalsByAffiliate.get(affiliateId);
+                Affiliate affiliate = affiliates.get(affiliateId);
+                Long recipientId = recipientIdByAffiliate.get(affiliateId);
+
+                CommissionReceiverType commissionReceiverType = getReceiverType(receiverTypes, recipientId);
+
+                CommissionCP58 commissionCP58 = getOrCreateCommissionCP58(existingCP58, commissionReceiverType, recipientId);
+                CP58IncentiveTotals storedTotals = CP58IncentiveTotals.of(commissionCP58);
+                if (mode == GiroIngestionMode.DELTA) {
+                    totals = storedTotals.add(totals);
+                }
+
+                switch (commissionReceiverType) {
+                    case VEP:
+                        commissionCP58.setRecipientId(affiliate.getVep().getId());
+                        commissionCP58.setRecipientCode(affiliate.getVep().getCode());
+                        commissionCP58.setRecipientIdentificationNo(affiliate.getIdentificationNumber());
+                        break;
+                    case FOV:
+                        commissionCP58.setRecipientId(affiliate.getFov().getId());
+                        commissionCP58.setRecipientCode(affiliate.getFov().getCode());
+                        commissionCP58.setRecipientIdentificationNo(affiliate.getIdentificationNumber() != null ? affiliate.getIdentificationNumber() : "");
+                        commissionCP58.setBusinessRegistrationNo(affiliate.getFov().getBusinessRegistrationNumber() != null ? affiliate.getIdentificationNumber() : "");
+                        break;
+                    case MR:
+                        commissionCP58.setRecipientId(affiliate.getMr().getId());
+                        commissionCP58.setRecipientCode(affiliate.getMr().getCode());
+                        commissionCP58.setRecipientIdentificationNo(affiliate.getIdentificationNumber());
+                        break;
+                    default:
+                        throw new ServiceAppException(HttpStatus.BAD_REQUEST, ComcalError.CP58_INVALID_RECIPIENT_TYPE.getCode() + commissionReceiverType);
+                }
+
+                commissionCP58.setRecipientName(affiliate.getName());
+                commissionCP58.setRecipientType(commissionReceiverType);
+                commissionCP58.setTotalReferralAmount(totals.getReferralFee());
+                commissionCP58.setTotalHouseIncentive(totals.getHouseIncentive());
+                commissionCP58.setTotalTourTravelPackageIncentive(totals.getTourTravelIncentive());
+                commissionCP58.setTotalOtherIncentive(totals.getOthers());
+                commissionCP58.setTotalVehicleIncentive(totals.getVehicleIncentive());
+                commissionCP58.setRecipientIncomeTaxNo("");
+                CP58AddressParser.Address address = cp58AddressParser.parse(affiliate.getCorrespondingAddress());
+                commissionCP58.setRecipientAddress(address.getFormattedAddress());
+                commissionCP58.setResidentInMalaysia(address.getResidentInMalaysia());
+                commissionCP58.setYears(years);
+
+                checkReconciledTotals(mode, storedTotals, commissionCP58);
+                commissionCP58List.add(commissionCP58);
+            }
+            cp58BatchWriteDAO.saveAll(commissionCP58List);
+        }
+    }
+
+    private void processBdmBdd(Map<Long, CP58IncentiveTotals> totalsByCompany, GiroIngestionMode mode) {
+
+        int years = Year.now().getValue() - 1;
+        for (List<Long> companyIds : cp58RecipientBatchDAO.partition(totalsByCompany.keySet())) {
+            Map<Long, CommissionReceiverType> receiverTypes = cp58RecipientBatchDAO.findReceiverTypes(companyIds);
+            Map<Long, Company> companies = cp58RecipientBatchDAO.findCompanies(companyIds);
+            Map<CommissionReceiverType, Map<Long, CommissionCP58>> existingCP58 =
+                    cp58RecipientBatchDAO.findCommissionCP58(companyIds, years);
+
+            List<CommissionCP58> commissionCP58List = new ArrayList<>(companyIds.size());
+            for (Long companyId : companyIds) {
+                CP58IncentiveTotals totals = totalsByCompany.get(companyId);
+
+                CommissionReceiverType commissionReceiverType = getReceiverType(receiverTypes, companyId);
+
+                Company company = companies.get(companyId);
+                if (company == null) {
+                    throw new ServiceAppException(HttpStatus.BAD_REQUEST, ComcalError.CP58_AFFILIATE_NOT_FOUND.getCode(), companyId);
+                }
+
+                CommissionCP58 commissionCP58 = getOrCreateCommissionCP58(existingCP58, commissionReceiverType, companyId);
+                CP58IncentiveTotals storedTotals = CP58IncentiveTotals.of(commissionCP58);
+                if (mode == GiroIngestionMode.DELTA) {
+                    totals = storedTotals.add(totals);
+                }
+
+                commissionCP58.setRecipientId(companyId);
+                commissionCP58.setRecipientCode(company.getCode());
+                commissionCP58.setRecipientName(company.getName());
+                commissionCP58.setRecipientType(commissionReceiverType);
+                commissionCP58.setBusinessRegistrationNo(company.getNewBusinessRegNo());
+                commissionCP58.setTotalTrainingDevelopmentIncentive(totals.getTrainingIncentive());
+                commissionCP58.setTotalHouseIncentive(totals.getHouseIncentive());
+                commissionCP58.setTotalTourTravelPackageIncentive(totals.getTourTravelIncentive());
+                commissionCP58.setTotalOtherIncentive(totals.getOthers());
+                commissionCP58.setTotalVehicleIncentive(totals.getVehicleIncentive());
+                commissionCP58.setRecipientIncomeTaxNo(company.getCompanyOwner().getIncomeTaxNo());
+                CP58AddressParser.Address address = cp58AddressParser.parse(company.getBranch().getAddress());
+                commissionCP58.setRecipientAddress(address.getFormattedAddress());
+                commissionCP58.setResidentInMalaysia(address.getResidentInMalaysia());
+                commissionCP58.setYears(years);
+
+                checkReconciledTotals(mode, storedTotals, commissionCP58);
+                commissionCP58List.add(commissionCP58);
+            }
+            cp58BatchWriteDAO.saveAll(commissionCP58List);
+        }
+    }
+
+    private void processAdviser(Map<Long, CP58IncentiveTotals> totalsByAdviser, GiroIngestionMode mode) {
+
+        // Process advisers batch by batch
+        int years = Year.now().getValue() - 1;
+        for (List<Long> adviserIds : cp58RecipientBatchDAO.partition(totalsByAdviser.keySet())) {
+            Map<Long, CommissionReceiverType> receiverTypes = cp58RecipientBatchDAO.findReceiverTypes(adviserIds);
+            Map<Long, Planner> advisers = cp58RecipientBatchDAO.findPlanners(adviserIds);
+            Map<CommissionReceiverType, Map<Long, CommissionCP58>> existingCP58 =
+                    cp58RecipientBatchDAO.findCommissionCP58(adviserIds, years);
+
+            List<CommissionCP58> commissionCP58List = new ArrayList<>(adviserIds.size());
+            for (Long adviserId : adviserIds) {
+                CP58IncentiveTotals totals = totalsByAdviser.get(adviserId);
+
+                CommissionReceiverType commissionReceiverType = getReceiverType(receiverTypes, adviserId);
+
+                Planner adviser = advisers.get(adviserId);
+                if (adviser == null) {
+                    throw new ServiceAppException(HttpStatus.BAD_REQUEST, ComcalError.CP58_ADVISER_NOT_FOUND.getCode(), adviserId);
+                }
+
+                CommissionCP58 commissionCP58 = getOrCreateCommissionCP58(existingCP58, commissionReceiverType, adviserId);
+                CP58IncentiveTotals storedTotals = CP58IncentiveTotals.of(commissionCP58);
+                if (mode == GiroIngestionMode.DELTA) {
+                    totals = storedTotals.add(totals);
+                }
+
+                commissionCP58.setRecipientId(adviserId);
+                commissionCP58.setRecipientCode(adviser.getVkaCode());
+                commissionCP58.setRecipientName(adviser.getPreferredName());
+                commissionCP58.setRecipientType(commissionReceiverType);
+                commissionCP58.setRecipientIdentificationNo(adviser.getIdentificationNo());
+                commissionCP58.setTotalReferralAmount(totals.getReferralFee());
+                commissionCP58.setTotalHouseIncentive(totals.getHouseIncentive());
+                commissionCP58.setTotalTourTravelPackageIncentive(totals.getTourTravelIncentive());
+                commissionCP58.setTotalOtherIncentive(totals.getOthers());
+                commissionCP58.setTotalVehicleIncentive(totals.getVehicleIncentive());
+                commissionCP58.setRecipientIncomeTaxNo(adviser.getIncomeTaxNo());
+                CP58AddressParser.Address address = cp58AddressParser.parse(adviser.getResidentialAddress());
+                commissionCP58.setRecipientAddress(address.getFormattedAddress());
+                commissionCP58.setResidentInMalaysia(address.getResidentInMalaysia());
+                commissionCP58.setYears(years);
+
+                checkReconciledTotals(mode, storedTotals, commissionCP58);
+                commissionCP58List.add(commissionCP58);
+            }
+            cp58BatchWriteDAO.saveAll(commissionCP58List);
+        }
+    }
+
+    private void checkReconciledTotals(GiroIngestionMode mode, CP58IncentiveTotals storedTotals, CommissionCP58 commissionCP58) {
+        if (mode != GiroIngestionMode.RECONCILE || commissionCP58.getId() == null) {
+            return;
+        }
+        CP58IncentiveTotals recomputedTotals = CP58IncentiveTotals.of(commissionCP58);
+        if (!storedTotals.matches(recomputedTotals)) {
+            log.warn("CP58 totals of " + commissionCP58.getRecipientType() + " " + commissionCP58.getRecipientCode()
+                    + " drifted from the full recompute, replacing " + storedTotals + " with " + recomputedTotals);
+        }
+    }
+
+    private CommissionReceiverType getReceiverType(Map<Long, CommissionReceiverType> receiverTypes, Long recipientId) {
+        CommissionReceiverType commissionReceiverType = receiverTypes.get(recipientId);
+        if (commissionReceiverType == null) {
+            throw new ServiceAppException(HttpStatus.BAD_REQUEST, ComcalError.CP58_INVALID_RECIPIENT_TYPE.getCode() + recipientId);
+        }
+        return commissionReceiverType;
+    }
+
+    private CommissionCP58 getOrCreateCommissionCP58(Map<CommissionReceiverType, Map<Long, CommissionCP58>> existingCP58,
+                                                     CommissionReceiverType commissionReceiverType, Long recipientId) {
+        CommissionCP58 commissionCP58 = existingCP58.getOrDefault(commissionReceiverType, Collections.emptyMap()).get(recipientId);
+        if (commissionCP58 == null) {
+            commissionCP58 = new CommissionCP58();
+        }
+        return commissionCP58;
+    }
+
+    public Short isAddressInMalaysia(String jsonAddress) {
+        return cp58AddressParser.parse(jsonAddress).getResidentInMalaysia();
+    }
+
+    static Map<String, String> extractTaxNoParts(String incomeTaxNo) {
+        Map<String, String> taxParts = new HashMap<>();
+        String taxNo1 = "";
+        String taxNo2 = "";
+
+        if (incomeTaxNo.startsWith("C1")) {
+            taxNo1 = "C1";
+            taxNo2 = incomeTaxNo.substring(2);
+        } else {
+            StringBuilder letters = new StringBuilder();
+            StringBuilder digits = new StringBuilder();
+
+            for (char c : incomeTaxNo.toCharArray()) {
+                if (Character.isLetter(c)) {
+                    letters.append(c);
+                } else if (Character.isDigit(c)) {
+                    digits.append(c);
+                }
+            }
+
+            taxNo1 = letters.toString();
+            taxNo2 = digits.toString();
+        }
+
+        taxParts.put("taxNo1", taxNo1);
+        taxParts.put("taxNo2", taxNo2);
+
+        return taxParts;
+    }
+
+    private DistributionSource resolveDistributionSource(String sourceDirPath, String targetDirPath, String archiveDirPath,
+                                                         Pattern pattern, CommissionReceiverType type) throws IOException {
+        String typeDirectory;
+        switch (type) {
+            case ADVISER:
+                typeDirectory = "ADVISER";
+                break;
+            case BDM:
+                typeDirectory = "BDM";
+                break;
+            case BDD:
+                typeDirectory = "BDD";
+                break;
+            default:
+                throw new ServiceAppException(HttpStatus.BAD_REQUEST, ComcalError.CP58_INVALID_RECIPIENT_TYPE.getCode() + type);
+        }
+        Path sourceDir = Paths.get(sourceDirPath).resolve(typeDirectory);
+        DistributionSource source = new DistributionSource(type, sourceDir,
+                Paths.get(targetDirPath).resolve(typeDirectory), Paths.get(archiveDirPath).resolve(typeDirectory));
+        createDirectoryIfNotExists(sourceDir);
+
+        source.manifests.addAll(cp58DistributionManifest.find(sourceDir));
+        if (source.manifests.isEmpty()) {
+            // Output from before manifests were written, or bundles: fall back to one scan
+            List<String> fileNames = listFileNames(sourceDir);
+            source.files.addAll(findMatchingFiles(fileNames, pattern));
+            source.bundles.addAll(findMatchingFiles(fileNames, CP58BundleWriter.BUNDLE_FILE_PATTERN));
+        } else {
+            Set<String> listedFiles = new LinkedHashSet<>();
+            for (Path manifest : source.manifests) {
+                listedFiles.addAll(cp58DistributionManifest.read(manifest));
+            }
+            // A listed file that is missing fails its own link or move instead of costing every file a stat
+            for (String fileName : listedFiles) {
+                if (pattern.matcher(fileName).matches()) {
+                    source.files.add(fileName);
+                } else {
+                    log.warn("Ignoring unexpected file " + fileName + " listed in CP58 manifest for " + type);
+                }
+            }
+        }
+
+        if (source.files.isEmpty() && source.bundles.isEmpty()) {
+            log.info("No files found in: " + sourceDir);
+        }
+        return source;
+    }
+
+    private void distributeFiles(List<DistributionSource> sources, Pattern pattern) throws IOException, InterruptedException {
+        List<CP58FileDistributor.Transfer> copies = new ArrayList<>();
+        List<CP58FileDistributor.Transfer> bundles = new ArrayList<>();
+        for (DistributionSource source : sources) {
+            createDirectoryIfNotExists(source.targetDir);
+            for (String fileName : source.files) {
+                copies.add(new CP58FileDistributor.Transfer(source.sourceDir.resolve(fileName), source.targetDir.resolve(fileName)));
+            }
+            for (String bundleFile : source.bundles) {
+                bundles.add(new CP58FileDistributor.Transfer(source.sourceDir.resolve(bundleFile), source.targetDir));
+            }
+        }
+        cp58FileDistributor.copyAll(copies);
+        List<List<Path>> extractedFiles = cp58FileDistributor.extractAll(bundles, pattern);
+
+        // The records are built here rather than on the file workers so that they share this transaction
+        List<DistributeCP58File> distributedFiles = new ArrayList<>(copies.size());
+        List<CommissionCP58NotificationOutbox> notifications = new ArrayList<>();
+        int bundleIndex = 0;
+        for (DistributionSource source : sources) {
+            List<Path> targetFiles = new ArrayList<>();
+            for (String fileName : source.files) {
+                targetFiles.add(source.targetDir.resolve(fileName));
+            }
+            for (String bundleFile : source.bundles) {
+                List<Path> bundleFiles = extractedFiles.get(bundleIndex++);
+                targetFiles.addAll(bundleFiles);
+                log.info("Extracted " + bundleFiles.size() + " files from bundle " + bundleFile);
+            }
+
+            // One lookup per type instead of one per file
+            Set<String> codes = new HashSet<>();
+            for (Path targetFile : targetFiles) {
+                codes.add(getRecipientCode(targetFile));
+            }
+            Map<String, Long> recipientIds = source.type == CommissionReceiverType.ADVISER
+                    ? cp58RecipientBatchDAO.findPlannerIdsByCode(codes)
+                    : cp58RecipientBatchDAO.findCompanyIdsByCode(codes);
+
+            for (Path targetFile : targetFiles) {
+                distributedFiles.add(buildDistributedCP58(targetFile, source.type, recipientIds, notifications));
+            }
+            log.info("Processed " + targetFiles.size() + " files from: " + source.sourceDir);
+        }
+        cp58BatchWriteDAO.saveAll(distributedFiles);
+        cp58Metrics.recordDistributedFiles(distributedFiles.size());
+        cp58BatchWriteDAO.saveAll(notifications);
+        cp58NotificationDispatcher.dispatchAfterCommit();
+    }
+
+    private void archiveCP58(List<DistributionSource> sources) throws IOException, InterruptedException {
+        List<CP58FileDistributor.Transfer> moves = new ArrayList<>();
+        for (DistributionSource source : sources) {
+            createDirectoryIfNotExists(source.archiveDir);
+            List<String> fileNames = new ArrayList<>(source.files);
+            fileNames.addAll(source.bundles);
+            for (String fileName : fileNames) {
+                moves.add(new CP58FileDistributor.Transfer(source.sourceDir.resolve(fileName), source.archiveDir.resolve(fileName)));
+            }
+            if (!source.manifests.isEmpty()) {
+                Path manifestArchiveDir = source.archiveDir.resolve(CP58DistributionManifest.MANIFEST_DIRECTORY);
+                createDirectoryIfNotExists(manifestArchiveDir);
+                for (Path manifest : source.manifests) {
+                    moves.add(new CP58FileDistributor.Transfer(manifest, manifestArchiveDir.resolve(manifest.getFileName())));
+                }
+            }
+        }
+        cp58FileDistributor.moveAll(moves);
+        log.info("Archived " + moves.size() + " CP58 files");
+    }
+
+    private DistributeCP58File buildDistributedCP58(Path filePath, CommissionReceiverType type, Map<String, Long> recipientIds,
+                                                    List<CommissionCP58NotificationOutbox> notifications) {
+        DistributeCP58File distributeCP58File = new DistributeCP58File();
+        String fileName = filePath.getFileName().toString();
+        String code = getRecipientCode(filePath);
+
+        switch (type) {
+            case ADVISER:
+                Long plannerId = recipientIds.get(code);
+                if (plannerId == null) {
+                    throw new ServiceAppException(HttpStatus.BAD_REQUEST, ComcalError.CP58_ADVISER_NOT_FOUND.getCode(), code);
+                }
+                Planner planner = cp58RecipientBatchDAO.getPlannerReference(plannerId);
+                distributeCP58File.setReceivedType(CommissionReceiverType.ADVISER);
+                distributeCP58File.setAdviser(planner);
+                //Queue Notification to Adviser, sent once the distribution commits
+                notifications.add(cp58NotificationDispatcher.newEntry(planner));
+                break;
+            case BDM:
+                distributeCP58File.setReceivedType(CommissionReceiverType.BDM);
+                distributeCP58File.setCompany(
+                        cp58RecipientBatchDAO.getCompanyReference(recipientIds.get(code))
+                );
+                break;
+            case BDD:
+                distributeCP58File.setReceivedType(CommissionReceiverType.BDD);
+                distributeCP58File.setCompany(
+                        cp58RecipientBatchDAO.getCompanyReference(recipientIds.get(code))
+                );
+                break;
+            default:
+                throw new ServiceAppException(HttpStatus.BAD_REQUEST, ComcalError.CP58_INVALID_RECIPIENT_TYPE.getCode() + type);
+        }
+        distributeCP58File.setName(fileName);
+        distributeCP58File.setPath(filePath.toString());
+
+        return distributeCP58File;
+    }
+
+    private static String getRecipientCode(Path filePath) {
+        return filePath.getFileName().toString().split("_")[0];
+    }
+
+    private void createDirectoryIfNotExists(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            Files.createDirectories(directory);
+            log.info("Created directory: " + directory);
+        }
+    }
+
+    private List<String> listFileNames(Path directory) throws IOException {
+        try (Stream<Path> filesStream = Files.list(directory)) {
+            return filesStream.map(path -> path.getFileName().toString())
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private List<String> findMatchingFiles(List<String> fileNames, Pattern pattern) {
+        return fileNames.stream()
+                .filter(fileName -> pattern.matcher(fileName).matches())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * What distribution picked up for one recipient type.
+     */
+    private static class DistributionSource {
+        private final CommissionReceiverType type;
+        private final Path sourceDir;
+        private final Path targetDir;
+        private final Path archiveDir;
+        private final List<String> files = new ArrayList<>();
+        private final List<String> bundles = new ArrayList<>();
+        private final List<Path> manifests = new ArrayList<>();
+
+        private DistributionSource(CommissionReceiverType type, Path sourceDir, Path targetDir, Path archiveDir) {
+            this.type = type;
+            this.sourceDir = sourceDir;
+            this.targetDir = targetDir;
+            this.archiveDir = archiveDir;
+        }
+    }
+}
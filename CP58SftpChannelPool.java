@@ -0,0 +1,174 @@
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool of connected SFTP channels for the CP58 uploads, so the SSH handshake
+ * is paid once per channel instead of once per file. Sessions send keep-alives
+ * while idle and a channel is checked before it is handed out; broken ones are
+ * dropped and replaced on demand.
+ * <p>
+ * Every borrower holds one of {@code cp58.sftp.pool.size} permits until it
+ * releases or invalidates its channel, so a waiting borrower gets the
+ * capacity of a failed channel as well as a returned one.
+ * <p>
+ * Connects with the host, port, credentials and host key policy of
+ * {@link BaseSFTP}, so both upload paths always reach and verify the same
+ * server. Only used when
+ * {@code cp58.sftp.pool.enabled=true}; otherwise uploads keep going through
+ * {@link BaseSFTP}.
+ */
+@Slf4j
+@Component
+public class CP58SftpChannelPool {
+
+    private final BaseSFTP baseSFTP;
+    private final boolean enabled;
+    private final int size;
+    private final int keepAliveIntervalMillis;
+    private final long borrowTimeoutMillis;
+
+    private final BlockingQueue<PooledChannel> idle = new LinkedBlockingQueue<>();
+    private final Semaphore permits;
+    private volatile boolean closed;
+
+    public CP58SftpChannelPool(BaseSFTP baseSFTP,
+                               @Value("${cp58.sftp.pool.enabled:false}") boolean enabled,
+                               @Value("${cp58.sftp.pool.size:8}") int size,
+                               @Value("${cp58.sftp.pool.keep-alive-interval-ms:30000}") int keepAliveIntervalMillis,
+                               @Value("${cp58.sftp.pool.borrow-timeout-ms:60000}") long borrowTimeoutMillis) {
+        this.baseSFTP = baseSFTP;
+        this.enabled = enabled;
+        this.size = Math.max(1, size);
+        this.permits = new Semaphore(this.size, true);
+        this.keepAliveIntervalMillis = keepAliveIntervalMillis;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Hands out an idle channel or connects a new one, waiting up to
+     * {@code cp58.sftp.pool.borrow-timeout-ms} while all of them are in use.
+     * The channel must be given back with {@link #release} or
+     * {@link #invalidate}.
+     */
+    public PooledChannel borrow() throws JSchException, InterruptedException {
+        if (closed) {
+            throw new IllegalStateException("CP58 SFTP channel pool is closed");
+        }
+        if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+            throw new JSchException("Timed out waiting for a CP58 SFTP channel after " + borrowTimeoutMillis + "ms");
+        }
+
+        try {
+            PooledChannel channel;
+            while ((channel = idle.poll()) != null) {
+                if (channel.isHealthy()) {
+                    return channel;
+                }
+                channel.disconnect();
+            }
+            // Every other channel is held by another permit, so this one stays within the pool size
+            return connect();
+        } catch (JSchException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public void release(PooledChannel channel) {
+        if (!closed && channel.isHealthy()) {
+            idle.offer(channel);
+        } else {
+            channel.disconnect();
+        }
+        permits.release();
+    }
+
+    /**
+     * Drops a channel that failed mid-transfer instead of returning it. Its
+     * permit goes back to the pool, so a waiting borrower connects a new one.
+     */
+    public void invalidate(PooledChannel channel) {
+        channel.disconnect();
+        permits.release();
+    }
+
+    @PreDestroy
+    public void close() {
+        closed = true;
+        PooledChannel channel;
+        while ((channel = idle.poll()) != null) {
+            channel.disconnect();
+        }
+    }
+
+    private PooledChannel connect() throws JSchException {
+        JSch jsch = new JSch();
+        String knownHosts = baseSFTP.getKnownHosts();
+        if (knownHosts != null && !knownHosts.isEmpty()) {
+            jsch.setKnownHosts(knownHosts);
+        }
+        String privateKey = baseSFTP.getPrivateKey();
+        if (privateKey != null && !privateKey.isEmpty()) {
+            jsch.addIdentity(privateKey);
+        }
+
+        Session session = jsch.getSession(baseSFTP.getUsername(), baseSFTP.getHost(), baseSFTP.getPort());
+        String password = baseSFTP.getPassword();
+        if (password != null && !password.isEmpty()) {
+            session.setPassword(password);
+        }
+        String strictHostKeyChecking = baseSFTP.getStrictHostKeyChecking();
+        session.setConfig("StrictHostKeyChecking",
+                strictHostKeyChecking == null || strictHostKeyChecking.isEmpty() ? "yes" : strictHostKeyChecking);
+        session.setServerAliveInterval(keepAliveIntervalMillis);
+        session.connect();
+
+        try {
+            ChannelSftp channel = (ChannelSftp) session.openChannel("sftp");
+            channel.connect();
+            log.info("Opened CP58 SFTP channel to " + baseSFTP.getHost() + " (pool size " + size + ")");
+            return new PooledChannel(session, channel);
+        } catch (JSchException e) {
+            session.disconnect();
+            throw e;
+        }
+    }
+
+    public static class PooledChannel {
+        private final Session session;
+        private final ChannelSftp channel;
+
+        private PooledChannel(Session session, ChannelSftp channel) {
+            this.session = session;
+            this.channel = channel;
+        }
+
+        public ChannelSftp getChannel() {
+            return channel;
+        }
+
+        private boolean isHealthy() {
+            return session.isConnected() && channel.isConnected() && !channel.isClosed();
+        }
+
+        private void disconnect() {
+            channel.disconnect();
+            session.disconnect();
+        }
+    }
+}
@@ -0,0 +1,330 @@
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.SftpException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Uploads CP58 output files. Uses the {@link CP58SftpChannelPool} when it is
+ * enabled and falls back to {@link BaseSFTP} otherwise. Input streams are
+ * always closed once the upload finishes or fails.
+ */
+@Slf4j
+@Component
+public class CP58SftpUploader {
+
+    static final String PART_SUFFIX = ".part";
+
+    private final BaseSFTP baseSFTP;
+    private final CP58SftpChannelPool cp58SftpChannelPool;
+    private final CP58Metrics cp58Metrics;
+    private final int uploadRetries;
+
+    public CP58SftpUploader(BaseSFTP baseSFTP, CP58SftpChannelPool cp58SftpChannelPool, CP58Metrics cp58Metrics,
+                            @Value("${cp58.sftp.upload-retries:2}") int uploadRetries) {
+        this.baseSFTP = baseSFTP;
+        this.cp58SftpChannelPool = cp58SftpChannelPool;
+        this.cp58Metrics = cp58Metrics;
+        this.uploadRetries = Math.max(0, uploadRetries);
+    }
+
+    /**
+     * Whether {@link #openUploadStream(String)} is available, which needs the
+     * channel pool.
+     */
+    public boolean supportsStreaming() {
+        return cp58SftpChannelPool.isEnabled();
+    }
+
+    public void upload(String remotePath, byte[] content) throws IOException, JSchException, SftpException, InterruptedException {
+        upload(remotePath, new ByteArrayInputStream(content));
+    }
+
+    /**
+     * Uploads a buffered file, retrying up to {@code cp58.sftp.upload-retries}
+     * times from the same bytes.
+     */
+    public void upload(String remotePath, CP58BufferPool.Buffer buffer) throws IOException, JSchException, SftpException, InterruptedException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                upload(remotePath, buffer.toInputStream());
+                return;
+            } catch (IOException | JSchException | SftpException e) {
+                if (attempt >= uploadRetries) {
+                    throw e;
+                }
+                log.warn("Upload of " + remotePath + " failed, retrying (" + (attempt + 1) + "/" + uploadRetries + ")", e);
+            }
+        }
+    }
+
+    public void upload(String remotePath, InputStream inputStream) throws IOException, JSchException, SftpException, InterruptedException {
+        long start = cp58Metrics.start();
+        CountingInputStream counted = new CountingInputStream(inputStream);
+        try (InputStream in = counted) {
+            if (!cp58SftpChannelPool.isEnabled()) {
+                baseSFTP.uploadFileToSFTP(in, remotePath);
+            } else {
+                CP58SftpChannelPool.PooledChannel channel = cp58SftpChannelPool.borrow();
+                try {
+                    channel.getChannel().put(in, remotePath);
+                } catch (SftpException | RuntimeException e) {
+                    cp58SftpChannelPool.invalidate(channel);
+                    throw e;
+                }
+                cp58SftpChannelPool.release(channel);
+            }
+        }
+        cp58Metrics.recordUpload(start, counted.count);
+    }
+
+    /**
+     * Creates {@code remoteDir} unless it already exists. Goes through the
+     * channel pool even when uploads do not, in which case the channel is
+     * closed again afterwards.
+     */
+    public void createDirectory(String remoteDir) throws JSchException, SftpException, InterruptedException {
+        CP58SftpChannelPool.PooledChannel channel = cp58SftpChannelPool.borrow();
+        try {
+            ChannelSftp sftp = channel.getChannel();
+            try {
+                sftp.stat(remoteDir);
+            } catch (SftpException e) {
+                if (e.id != ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+                    throw e;
+                }
+                try {
+                    sftp.mkdir(remoteDir);
+                } catch (SftpException notCreated) {
+                    // Fine if another node created it in the meantime
+                    sftp.stat(remoteDir);
+                }
+            }
+        } catch (SftpException | RuntimeException e) {
+            cp58SftpChannelPool.invalidate(channel);
+            throw e;
+        }
+        if (cp58SftpChannelPool.isEnabled()) {
+            cp58SftpChannelPool.release(channel);
+        } else {
+            cp58SftpChannelPool.invalidate(channel);
+        }
+    }
+
+    /**
+     * Opens a stream that writes straight into a pooled SFTP channel; only
+     * available when {@link #supportsStreaming()}. The content goes to
+     * {@code remotePath} plus {@value #PART_SUFFIX} and is renamed to
+     * {@code remotePath} once it is closed, so readers never see a partial
+     * file under its real name. Call {@link UploadStream#abort()} instead of
+     * close when writing fails.
+     */
+    public UploadStream openUploadStream(String remotePath) throws JSchException, SftpException, InterruptedException {
+        if (!cp58SftpChannelPool.isEnabled()) {
+            throw new IllegalStateException("Streaming uploads need cp58.sftp.pool.enabled");
+        }
+
+        CP58SftpChannelPool.PooledChannel channel = cp58SftpChannelPool.borrow();
+        try {
+            return new ChannelUploadStream(remotePath, channel, channel.getChannel().put(remotePath + PART_SUFFIX));
+        } catch (SftpException | RuntimeException e) {
+            cp58SftpChannelPool.invalidate(channel);
+            throw e;
+        }
+    }
+
+    /**
+     * Like {@link #openUploadStream(String)}, but without the channel pool the
+     * content is spooled to a temp file and uploaded on close. Meant for large
+     * outputs such as per-type bundles and workbooks.
+     */
+    public UploadStream openSpooledUploadStream(String remotePath) throws IOException, JSchException, SftpException, InterruptedException {
+        if (cp58SftpChannelPool.isEnabled()) {
+            return openUploadStream(remotePath);
+        }
+        Path spoolFile = Files.createTempFile("cp58_", ".spool");
+        try {
+            return new SpooledUploadStream(remotePath, spoolFile);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(spoolFile);
+            throw e;
+        }
+    }
+
+    public abstract static class UploadStream extends FilterOutputStream {
+        protected final String remotePath;
+        protected boolean finished;
+        protected final long openedAt = System.nanoTime();
+        protected long bytesWritten;
+
+        private UploadStream(String remotePath, OutputStream out) {
+            super(out);
+            this.remotePath = remotePath;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            bytesWritten++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            bytesWritten += len;
+        }
+
+        /**
+         * Discards what was written so far without leaving a partial file.
+         */
+        public abstract void abort();
+    }
+
+    private class ChannelUploadStream extends UploadStream {
+        private final CP58SftpChannelPool.PooledChannel channel;
+        private final String partPath;
+
+        private ChannelUploadStream(String remotePath, CP58SftpChannelPool.PooledChannel channel, OutputStream out) {
+            super(remotePath, out);
+            this.channel = channel;
+            this.partPath = remotePath + PART_SUFFIX;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            try {
+                out.close();
+                rename();
+            } catch (IOException | SftpException | RuntimeException e) {
+                removePart();
+                cp58SftpChannelPool.invalidate(channel);
+                throw e instanceof IOException ? (IOException) e : new IOException("Upload of " + remotePath + " failed", e);
+            }
+            cp58SftpChannelPool.release(channel);
+            cp58Metrics.recordUpload(openedAt, bytesWritten);
+        }
+
+        @Override
+        public void abort() {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            try {
+                out.close();
+            } catch (IOException | RuntimeException e) {
+                log.warn("Unable to finish partial upload " + partPath, e);
+            }
+            removePart();
+            cp58SftpChannelPool.invalidate(channel);
+        }
+
+        private void rename() throws SftpException {
+            try {
+                channel.getChannel().rename(partPath, remotePath);
+            } catch (SftpException e) {
+                // Plain SFTP rename does not replace, so a rerun has to remove the previous file first
+                if (e.id != ChannelSftp.SSH_FX_FAILURE) {
+                    throw e;
+                }
+                try {
+                    channel.getChannel().rm(remotePath);
+                } catch (SftpException notReplaced) {
+                    throw e;
+                }
+                channel.getChannel().rename(partPath, remotePath);
+            }
+        }
+
+        private void removePart() {
+            try {
+                channel.getChannel().rm(partPath);
+            } catch (SftpException | RuntimeException e) {
+                log.warn("Unable to remove partial upload " + partPath, e);
+            }
+        }
+    }
+
+    private class SpooledUploadStream extends UploadStream {
+        private final Path spoolFile;
+
+        private SpooledUploadStream(String remotePath, Path spoolFile) throws IOException {
+            super(remotePath, new BufferedOutputStream(Files.newOutputStream(spoolFile)));
+            this.spoolFile = spoolFile;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            try {
+                out.close();
+                upload(remotePath, Files.newInputStream(spoolFile));
+            } catch (JSchException | SftpException e) {
+                throw new IOException("Upload of " + remotePath + " failed", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Upload of " + remotePath + " interrupted", e);
+            } finally {
+                Files.deleteIfExists(spoolFile);
+            }
+        }
+
+        @Override
+        public void abort() {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            try {
+                out.close();
+                Files.deleteIfExists(spoolFile);
+            } catch (IOException e) {
+                log.warn("Unable to delete spool file " + spoolFile, e);
+            }
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = in.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+}
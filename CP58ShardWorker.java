@@ -0,0 +1,42 @@
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Lets every node of the service help with a sharded CP58 run: each poll
+ * claims open shards of the current year and renders them until none is
+ * left. Does nothing unless {@code cp58.sharding.enabled} is set.
+ */
+@Slf4j
+@Component
+public class CP58ShardWorker {
+
+    private final CP58Service cp58Service;
+    private final CP58GenerationCheckpoints cp58GenerationCheckpoints;
+    private final CP58GenerationEngine cp58GenerationEngine;
+
+    public CP58ShardWorker(CP58Service cp58Service, CP58GenerationCheckpoints cp58GenerationCheckpoints,
+                           CP58GenerationEngine cp58GenerationEngine) {
+        this.cp58Service = cp58Service;
+        this.cp58GenerationCheckpoints = cp58GenerationCheckpoints;
+        this.cp58GenerationEngine = cp58GenerationEngine;
+    }
+
+    @Scheduled(fixedDelayString = "${cp58.sharding.poll-interval-ms:10000}")
+    public void poll() {
+        // Bundles are written per node and only uploaded at the end, so they cannot be sharded
+        if (!cp58GenerationCheckpoints.isShardingEnabled() || cp58GenerationEngine.isBundleOutput()) {
+            return;
+        }
+        try {
+            int shards = cp58Service.processAvailableShards(cp58GenerationCheckpoints.getNodeId());
+            if (shards > 0) {
+                log.info("Node " + cp58GenerationCheckpoints.getNodeId() + " finished " + shards + " CP58 shards");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("CP58 shard worker failed, unfinished shards are picked up once their lease expires", e);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+import lombok.extern.slf4j.Slf4j;
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JasperCompileManager;
+import net.sf.jasperreports.engine.JasperReport;
+import net.sf.jasperreports.engine.util.JRLoader;
+import net.sf.jasperreports.engine.util.JRSaver;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds compiled CP58 templates keyed by template path and jrxml content hash.
+ * A compiled copy is stored as {@code <name>.<hash>.jasper} next to the jrxml so
+ * later runs can load it instead of compiling again.
+ */
+@Slf4j
+@Component
+public class CP58TemplateCache {
+
+    public static final String TEMPLATE_NAME = "CP58.jrxml";
+    private static final String JRXML_EXTENSION = ".jrxml";
+    private static final String JASPER_EXTENSION = ".jasper";
+
+    private final BaseSFTP baseSFTP;
+    private final CP58Metrics cp58Metrics;
+    private final Map<String, CompiledTemplate> templates = new ConcurrentHashMap<>();
+
+    public CP58TemplateCache(BaseSFTP baseSFTP, CP58Metrics cp58Metrics) {
+        this.baseSFTP = baseSFTP;
+        this.cp58Metrics = cp58Metrics;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        String templatePath = buildTemplatePath(TEMPLATE_NAME);
+        try {
+            getReport(templatePath);
+            log.info("CP58 template warmed up: " + templatePath);
+        } catch (IOException | JRException e) {
+            log.warn("Unable to warm up CP58 template " + templatePath + ", it will be compiled on first use", e);
+        }
+    }
+
+    public String buildTemplatePath(String templateName) {
+        return Paths.get(baseSFTP.cp58Template(), templateName).toString();
+    }
+
+    public JasperReport getReport(String templatePath) throws IOException, JRException {
+        return getTemplate(templatePath).getReport();
+    }
+
+    public String getTemplateHash(String templatePath) throws IOException, JRException {
+        return getTemplate(templatePath).getHash();
+    }
+
+    private CompiledTemplate getTemplate(String templatePath) throws IOException, JRException {
+        byte[] source = Files.readAllBytes(Paths.get(templatePath));
+        String hash = sha256(source);
+
+        CompiledTemplate cached = templates.get(templatePath);
+        if (cached != null && cached.getHash().equals(hash)) {
+            return cached;
+        }
+
+        synchronized (this) {
+            cached = templates.get(templatePath);
+            if (cached != null && cached.getHash().equals(hash)) {
+                return cached;
+            }
+            CompiledTemplate compiled = new CompiledTemplate(hash, loadOrCompile(templatePath, source, hash));
+            templates.put(templatePath, compiled);
+            return compiled;
+        }
+    }
+
+    private JasperReport loadOrCompile(String templatePath, byte[] source, String hash) throws JRException {
+        Path compiledPath = buildCompiledPath(templatePath, hash);
+
+        if (Files.exists(compiledPath)) {
+            try {
+                log.info("Loading compiled CP58 template from " + compiledPath);
+                return (JasperReport) JRLoader.loadObject(compiledPath.toFile());
+            } catch (JRException e) {
+                log.warn("Compiled CP58 template " + compiledPath + " is unreadable, recompiling", e);
+            }
+        }
+
+        log.info("Compiling CP58 template " + templatePath);
+        long start = cp58Metrics.start();
+        JasperReport jasperReport = JasperCompileManager.compileReport(new ByteArrayInputStream(source));
+        cp58Metrics.stop(CP58Metrics.TEMPLATE_COMPILE, start);
+        try {
+            JRSaver.saveObject(jasperReport, compiledPath.toFile());
+        } catch (JRException e) {
+            log.warn("Unable to store compiled CP58 template at " + compiledPath, e);
+        }
+        return jasperReport;
+    }
+
+    private Path buildCompiledPath(String templatePath, String hash) {
+        Path path = Paths.get(templatePath);
+        String fileName = path.getFileName().toString();
+        if (fileName.endsWith(JRXML_EXTENSION)) {
+            fileName = fileName.substring(0, fileName.length() - JRXML_EXTENSION.length());
+        }
+        return path.resolveSibling(fileName + "." + hash.substring(0, 16) + JASPER_EXTENSION);
+    }
+
+    private static String sha256(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class CompiledTemplate {
+        private final String hash;
+        private final JasperReport report;
+
+        private CompiledTemplate(String hash, JasperReport report) {
+            this.hash = hash;
+            this.report = report;
+        }
+
+        private String getHash() {
+            return hash;
+        }
+
+        private JasperReport getReport() {
+            return report;
+        }
+    }
+}
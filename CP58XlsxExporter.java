@@ -0,0 +1,69 @@
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JasperPrint;
+import net.sf.jasperreports.engine.export.ooxml.JRXlsxExporter;
+import net.sf.jasperreports.export.SimpleExporterInput;
+import net.sf.jasperreports.export.SimpleOutputStreamExporterOutput;
+import net.sf.jasperreports.export.SimpleXlsxReportConfiguration;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.io.OutputStream;
+
+@Order(2)
+@Component
+public class CP58XlsxExporter implements CP58ReportExporter {
+
+    private final String excelMode;
+
+    public CP58XlsxExporter(@Value("${cp58.excel.mode:" + CP58ConsolidatedWorkbookExporter.MODE_PER_RECIPIENT + "}") String excelMode) {
+        this.excelMode = excelMode;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return !CP58ConsolidatedWorkbookExporter.MODE_CONSOLIDATED.equals(excelMode);
+    }
+
+    @Override
+    public String getExtension() {
+        return ".xlsx";
+    }
+
+    @Override
+    public String getOutputPath(CommissionReceiverType type) {
+        switch (type) {
+            case ADVISER:
+                return SftpPathConstant.CP58_IN_EXCEL_ADVISERS_PATH;
+            case BDD:
+                return SftpPathConstant.CP58_IN_EXCEL_BDD_PATH;
+            case BDM:
+                return SftpPathConstant.CP58_IN_EXCEL_BDM_PATH;
+            case VEP:
+                return SftpPathConstant.CP58_IN_EXCEL_VEP_PATH;
+            case FOV:
+                return SftpPathConstant.CP58_IN_EXCEL_FOV_PATH;
+            case MR:
+                return SftpPathConstant.CP58_IN_EXCEL_MR_PATH;
+            default:
+                throw new ServiceAppException(HttpStatus.BAD_REQUEST, ComcalError.CP58_INVALID_RECIPIENT_TYPE.getCode() + type);
+        }
+    }
+
+    @Override
+    public void export(JasperPrint jasperPrint, OutputStream outputStream) throws JRException {
+        JRXlsxExporter exporter = new JRXlsxExporter();
+        exporter.setExporterInput(new SimpleExporterInput(jasperPrint));
+        exporter.setExporterOutput(new SimpleOutputStreamExporterOutput(outputStream));
+
+        SimpleXlsxReportConfiguration configuration = new SimpleXlsxReportConfiguration();
+        configuration.setDetectCellType(true);
+        configuration.setOnePagePerSheet(false);
+        configuration.setRemoveEmptySpaceBetweenRows(true);
+        configuration.setWhitePageBackground(false);
+
+        exporter.setConfiguration(configuration);
+        exporter.exportReport();
+    }
+}
@@ -0,0 +1,80 @@
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * How far CP58 generation got for one shard of a recipient type and year:
+ * every {@link CommissionCP58} of the shard up to {@code lastCp58Id} has been
+ * rendered, uploaded and fingerprinted. A shard holds the rows whose
+ * {@code recipientId mod shardCount} equals {@code shardIndex}; without
+ * sharding there is a single shard per type.
+ * <p>
+ * A node works on a shard only while it holds the lease ({@code owner} and
+ * {@code leaseExpiresAt}); an expired lease can be claimed by another node.
+ * A run that did not finish leaves its checkpoints behind so the next run
+ * resumes after them.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "commission_cp58_checkpoint",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"years", "recipient_type", "shard_index"}))
+public class CommissionCP58Checkpoint {
+
+    public enum Status {
+        IN_PROGRESS, COMPLETE, FAILED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "years", nullable = false)
+    private Integer years;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "recipient_type", nullable = false, length = 16)
+    private CommissionReceiverType recipientType;
+
+    @Column(name = "shard_index", nullable = false)
+    private Integer shardIndex;
+
+    @Column(name = "shard_count", nullable = false)
+    private Integer shardCount;
+
+    @Column(name = "last_cp58_id", nullable = false)
+    private Long lastCp58Id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 16)
+    private Status status;
+
+    @Column(name = "force_full", nullable = false)
+    private Boolean forceFull;
+
+    /**
+     * The {@link CommissionCP58JobRun} whose progress the shard's chunks count
+     * towards, if the run was started as a background job.
+     */
+    @Column(name = "run_id", length = 36)
+    private String runId;
+
+    @Column(name = "owner", length = 128)
+    private String owner;
+
+    @Column(name = "lease_expires_at")
+    private LocalDateTime leaseExpiresAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,50 @@
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface CommissionCP58CheckpointDAO extends JpaRepository<CommissionCP58Checkpoint, Long> {
+
+    List<CommissionCP58Checkpoint> findByYears(Integer years);
+
+    @Query("select c from CommissionCP58Checkpoint c where c.years = :years and c.status = :status"
+            + " and (c.owner is null or c.leaseExpiresAt < :now) order by c.id")
+    List<CommissionCP58Checkpoint> findClaimable(@Param("years") Integer years,
+                                                 @Param("status") CommissionCP58Checkpoint.Status status,
+                                                 @Param("now") LocalDateTime now);
+
+    /**
+     * Takes the lease if nobody holds it or it has expired; returns 1 when
+     * this caller won the shard.
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("update CommissionCP58Checkpoint c set c.owner = :owner, c.leaseExpiresAt = :leaseExpiresAt, c.updatedAt = :now"
+            + " where c.id = :id and c.status = :status and (c.owner is null or c.leaseExpiresAt < :now)")
+    int claim(@Param("id") Long id, @Param("owner") String owner, @Param("leaseExpiresAt") LocalDateTime leaseExpiresAt,
+              @Param("now") LocalDateTime now, @Param("status") CommissionCP58Checkpoint.Status status);
+
+    /**
+     * Moves the checkpoint and extends the lease; returns 0 when the lease
+     * has been lost to another node.
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("update CommissionCP58Checkpoint c set c.lastCp58Id = :lastCp58Id, c.leaseExpiresAt = :leaseExpiresAt, c.updatedAt = :now"
+            + " where c.id = :id and c.owner = :owner")
+    int advance(@Param("id") Long id, @Param("owner") String owner, @Param("lastCp58Id") Long lastCp58Id,
+                @Param("leaseExpiresAt") LocalDateTime leaseExpiresAt, @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("update CommissionCP58Checkpoint c set c.status = :status, c.owner = null, c.leaseExpiresAt = null, c.updatedAt = :now"
+            + " where c.id = :id and c.owner = :owner")
+    int finish(@Param("id") Long id, @Param("owner") String owner,
+               @Param("status") CommissionCP58Checkpoint.Status status, @Param("now") LocalDateTime now);
+}
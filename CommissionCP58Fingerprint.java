@@ -0,0 +1,48 @@
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Content fingerprint of the last CP58 rendered and uploaded for a recipient
+ * and year. Generation skips recipients whose fingerprint is unchanged.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "commission_cp58_fingerprint",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"recipient_type", "recipient_code", "years"}))
+public class CommissionCP58Fingerprint {
+
+    @Id
+    // Pooled sequence ids, so the batched inserts of CP58BatchWriteDAO are not split per row
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "commission_cp58_fingerprint_seq")
+    @SequenceGenerator(name = "commission_cp58_fingerprint_seq", sequenceName = "commission_cp58_fingerprint_seq", allocationSize = 50)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "recipient_type", nullable = false)
+    private CommissionReceiverType recipientType;
+
+    @Column(name = "recipient_code", nullable = false)
+    private String recipientCode;
+
+    @Column(name = "years", nullable = false)
+    private Integer years;
+
+    @Column(name = "fingerprint", nullable = false, length = 64)
+    private String fingerprint;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,10 @@
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface CommissionCP58FingerprintDAO extends JpaRepository<CommissionCP58Fingerprint, Long> {
+
+    List<CommissionCP58Fingerprint> findByYears(Integer years);
+}
@@ -0,0 +1,37 @@
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Highest {@link ConsumeOCBCGiroFile} id already applied to the CP58 totals of
+ * a giro file year, and when those totals were last rebuilt from scratch.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "commission_cp58_giro_watermark")
+public class CommissionCP58GiroWatermark {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "file_year", nullable = false, unique = true)
+    private Integer fileYear;
+
+    @Column(name = "last_giro_file_id")
+    private Long lastGiroFileId;
+
+    @Column(name = "last_full_reconcile_at")
+    private LocalDateTime lastFullReconcileAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
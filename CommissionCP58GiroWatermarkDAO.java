@@ -0,0 +1,10 @@
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface CommissionCP58GiroWatermarkDAO extends JpaRepository<CommissionCP58GiroWatermark, Long> {
+
+    Optional<CommissionCP58GiroWatermark> findByFileYear(Integer fileYear);
+}
@@ -0,0 +1,68 @@
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * One background CP58 job run submitted through {@link CP58JobRunner}, next
+ * to the per-job status the service keeps through
+ * {@link CommissionCP58JobHelper}. Any node can read a run by its id.
+ * <p>
+ * {@code processed} and {@code failed} are only ever incremented with an
+ * update, by whichever worker finished a chunk of the run, so nodes
+ * rendering shards of the same run add up instead of overwriting each other.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "commission_cp58_job_run")
+public class CommissionCP58JobRun {
+
+    public enum State {
+        QUEUED, RUNNING, COMPLETE, FAILED
+    }
+
+    @Id
+    @Column(name = "run_id", length = 36)
+    private String runId;
+
+    @Column(name = "job_name", nullable = false, length = 16)
+    private String jobName;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "state", nullable = false, length = 16)
+    private State state;
+
+    @Column(name = "node", length = 128)
+    private String node;
+
+    @Column(name = "total", nullable = false)
+    private Long total;
+
+    @Column(name = "processed", nullable = false)
+    private Long processed;
+
+    @Column(name = "failed", nullable = false)
+    private Long failed;
+
+    @Column(name = "message", length = 1000)
+    private String message;
+
+    @Column(name = "metrics_summary", length = 4000)
+    private String metricsSummary;
+
+    @Column(name = "submitted_at", nullable = false)
+    private LocalDateTime submittedAt;
+
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+}
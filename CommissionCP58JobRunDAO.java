@@ -0,0 +1,55 @@
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface CommissionCP58JobRunDAO extends JpaRepository<CommissionCP58JobRun, String> {
+
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("update CommissionCP58JobRun r set r.state = :state, r.node = :node, r.startedAt = :now where r.runId = :runId")
+    int start(@Param("runId") String runId, @Param("state") CommissionCP58JobRun.State state,
+              @Param("node") String node, @Param("now") LocalDateTime now);
+
+    /**
+     * Sets the recipients the run has to go through and restarts its counts.
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("update CommissionCP58JobRun r set r.total = :total, r.processed = 0, r.failed = 0 where r.runId = :runId")
+    int track(@Param("runId") String runId, @Param("total") Long total);
+
+    /**
+     * Adds the outcome of one chunk; joins the caller's transaction, so the
+     * counts only move when the chunk commits.
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("update CommissionCP58JobRun r set r.processed = r.processed + :processed, r.failed = r.failed + :failed"
+            + " where r.runId = :runId")
+    int addProgress(@Param("runId") String runId, @Param("processed") Long processed, @Param("failed") Long failed);
+
+    /**
+     * Overwrites the counts, for runs that only one worker renders.
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("update CommissionCP58JobRun r set r.processed = :processed, r.failed = :failed where r.runId = :runId")
+    int setProgress(@Param("runId") String runId, @Param("processed") Long processed, @Param("failed") Long failed);
+
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("update CommissionCP58JobRun r set r.metricsSummary = :metricsSummary where r.runId = :runId")
+    int recordMetricsSummary(@Param("runId") String runId, @Param("metricsSummary") String metricsSummary);
+
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("update CommissionCP58JobRun r set r.state = :state, r.message = :message, r.finishedAt = :now where r.runId = :runId")
+    int finish(@Param("runId") String runId, @Param("state") CommissionCP58JobRun.State state,
+               @Param("message") String message, @Param("now") LocalDateTime now);
+}
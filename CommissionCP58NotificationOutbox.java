@@ -0,0 +1,69 @@
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * A CP58 distribution notification waiting to be sent. Rows are written in
+ * the distribution transaction and sent by {@link CP58NotificationDispatcher}
+ * once it has committed.
+ * <p>
+ * A dispatcher claims a row before sending it by moving it to
+ * {@code SENDING} under its own {@code owner} until {@code leaseExpiresAt}.
+ * A row whose lease expires, because its dispatcher stopped, is claimed
+ * again and may be sent twice.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "commission_cp58_notification_outbox")
+public class CommissionCP58NotificationOutbox {
+
+    public enum Status {
+        PENDING, SENDING, SENT, FAILED
+    }
+
+    @Id
+    // Pooled sequence ids, so the batched inserts of CP58BatchWriteDAO are not split per row
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "commission_cp58_notification_outbox_seq")
+    @SequenceGenerator(name = "commission_cp58_notification_outbox_seq", sequenceName = "commission_cp58_notification_outbox_seq",
+            allocationSize = 50)
+    private Long id;
+
+    @Column(name = "planner_id", nullable = false)
+    private Long plannerId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 16)
+    private Status status;
+
+    @Column(name = "attempts", nullable = false)
+    private Integer attempts;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "owner", length = 100)
+    private String owner;
+
+    @Column(name = "lease_expires_at")
+    private LocalDateTime leaseExpiresAt;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "sent_at")
+    private LocalDateTime sentAt;
+}
@@ -0,0 +1,66 @@
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface CommissionCP58NotificationOutboxDAO extends JpaRepository<CommissionCP58NotificationOutbox, Long> {
+
+    /**
+     * Ids of pending rows that are due and of rows whose claim has expired.
+     */
+    @Query("select o.id from CommissionCP58NotificationOutbox o"
+            + " where (o.status = :pending and o.nextAttemptAt <= :now)"
+            + " or (o.status = :sending and o.leaseExpiresAt < :now) order by o.id")
+    List<Long> findClaimableIds(@Param("pending") CommissionCP58NotificationOutbox.Status pending,
+                                @Param("sending") CommissionCP58NotificationOutbox.Status sending,
+                                @Param("now") LocalDateTime now, Pageable pageable);
+
+    /**
+     * Marks the rows of {@code ids} that are still claimable as being sent by
+     * {@code owner}, in one statement; returns how many this caller won.
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("update CommissionCP58NotificationOutbox o set o.status = :sending, o.owner = :owner, o.leaseExpiresAt = :leaseExpiresAt"
+            + " where o.id in :ids and ((o.status = :pending and o.nextAttemptAt <= :now)"
+            + " or (o.status = :sending and o.leaseExpiresAt < :now))")
+    int claimAll(@Param("ids") List<Long> ids, @Param("owner") String owner, @Param("leaseExpiresAt") LocalDateTime leaseExpiresAt,
+                 @Param("now") LocalDateTime now, @Param("pending") CommissionCP58NotificationOutbox.Status pending,
+                 @Param("sending") CommissionCP58NotificationOutbox.Status sending);
+
+    List<CommissionCP58NotificationOutbox> findByOwnerAndStatusOrderByIdAsc(String owner, CommissionCP58NotificationOutbox.Status status);
+
+    /**
+     * Records a successful send for every row of {@code ids} still claimed by
+     * {@code owner} and releases the claims; returns how many were updated.
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("update CommissionCP58NotificationOutbox o set o.status = :sent, o.attempts = o.attempts + 1,"
+            + " o.sentAt = :sentAt, o.lastError = null, o.owner = null, o.leaseExpiresAt = null"
+            + " where o.id in :ids and o.owner = :owner")
+    int completeSent(@Param("ids") List<Long> ids, @Param("owner") String owner,
+                     @Param("sent") CommissionCP58NotificationOutbox.Status sent, @Param("sentAt") LocalDateTime sentAt);
+
+    /**
+     * Records the outcome of one send and releases the claim; returns 0 when
+     * the claim has been lost to another dispatcher.
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("update CommissionCP58NotificationOutbox o set o.status = :status, o.attempts = :attempts,"
+            + " o.nextAttemptAt = :nextAttemptAt, o.lastError = :lastError, o.sentAt = :sentAt,"
+            + " o.owner = null, o.leaseExpiresAt = null"
+            + " where o.id = :id and o.owner = :owner")
+    int complete(@Param("id") Long id, @Param("owner") String owner,
+                 @Param("status") CommissionCP58NotificationOutbox.Status status, @Param("attempts") Integer attempts,
+                 @Param("nextAttemptAt") LocalDateTime nextAttemptAt, @Param("lastError") String lastError,
+                 @Param("sentAt") LocalDateTime sentAt);
+}
@@ -0,0 +1,81 @@
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * Reads of {@link CommissionCP58} for CP58 generation that keep memory flat
+ * however many recipients a type has: keyset chunks that each run in their
+ * own short transaction, so no cursor or connection is held between them.
+ */
+@Repository
+public class CommissionCP58StreamDAO {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * Up to {@code limit} rows of a type and year with an id above
+     * {@code afterId}, in id order, for readers that go through a whole type.
+     * The rows are detached when the read-only transaction ends.
+     */
+    @Transactional(readOnly = true)
+    public List<CommissionCP58> findChunk(CommissionReceiverType recipientType, int years, long afterId, int limit) {
+        return entityManager.createQuery(
+                        "select c from CommissionCP58 c where c.recipientType = :recipientType and c.years = :years"
+                                + " and c.id > :afterId order by c.id", CommissionCP58.class)
+                .setParameter("recipientType", recipientType)
+                .setParameter("years", years)
+                .setParameter("afterId", afterId)
+                .setHint("org.hibernate.readOnly", true)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    /**
+     * Up to {@code limit} rows of a checkpoint's shard with an id above
+     * {@code afterId}, in id order. The rows are detached when the read-only
+     * transaction ends.
+     */
+    @Transactional(readOnly = true)
+    public List<CommissionCP58> findChunk(CommissionCP58Checkpoint shard, long afterId, int limit) {
+        TypedQuery<CommissionCP58> query = entityManager.createQuery(
+                "select c from CommissionCP58 c" + shardCondition(shard) + " order by c.id", CommissionCP58.class);
+        return setShardParameters(query, shard, afterId)
+                .setHint("org.hibernate.readOnly", true)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    /**
+     * Rows of a checkpoint's shard not yet covered by the checkpoint.
+     */
+    @Transactional(readOnly = true)
+    public long countRemaining(CommissionCP58Checkpoint shard) {
+        TypedQuery<Long> query = entityManager.createQuery(
+                "select count(c) from CommissionCP58 c" + shardCondition(shard), Long.class);
+        return setShardParameters(query, shard, shard.getLastCp58Id()).getSingleResult();
+    }
+
+    private static String shardCondition(CommissionCP58Checkpoint shard) {
+        String condition = " where c.recipientType = :recipientType and c.years = :years and c.id > :afterId";
+        if (shard.getShardCount() > 1) {
+            condition += " and mod(c.recipientId, :shardCount) = :shardIndex";
+        }
+        return condition;
+    }
+
+    private static <T> TypedQuery<T> setShardParameters(TypedQuery<T> query, CommissionCP58Checkpoint shard, long afterId) {
+        query.setParameter("recipientType", shard.getRecipientType())
+                .setParameter("years", shard.getYears())
+                .setParameter("afterId", afterId);
+        if (shard.getShardCount() > 1) {
+            query.setParameter("shardCount", shard.getShardCount().longValue())
+                    .setParameter("shardIndex", shard.getShardIndex().longValue());
+        }
+        return query;
+    }
+}
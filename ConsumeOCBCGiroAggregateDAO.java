@@ -0,0 +1,72 @@
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-recipient incentive totals of {@link ConsumeOCBCGiroFile}, summed by the
+ * database. A giro row belongs to its adviser first, then its affiliate, then
+ * its company, matching the order CP58 processing has always used.
+ * <p>
+ * Sums are restricted to giro ids in {@code (afterGiroFileId, upToGiroFileId]},
+ * so the same queries serve a full rebuild and an incremental delta.
+ */
+@Repository
+public class ConsumeOCBCGiroAggregateDAO {
+
+    private static final String SUM_COLUMNS = "sum(g.totalReferralFee), sum(g.totalVehicleIncentive), sum(g.totalHouseIncentive), "
+            + "sum(g.totalTourTravelPackageIncentive), sum(g.totalOthers), sum(g.totalTrainingDevelopmentIncentive)";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Transactional(readOnly = true)
+    public Long findMaxGiroFileId(int fileYear) {
+        return entityManager.createQuery(
+                        "select max(g.id) from ConsumeOCBCGiroFile g where g.fileYear = :fileYear", Long.class)
+                .setParameter("fileYear", fileYear)
+                .getSingleResult();
+    }
+
+    @Transactional(readOnly = true)
+    public Map<Long, CP58IncentiveTotals> sumAdviserTotalsByFileYear(int fileYear, long afterGiroFileId, long upToGiroFileId) {
+        return sumTotals("g.adviser.id", "g.adviser is not null", fileYear, afterGiroFileId, upToGiroFileId);
+    }
+
+    @Transactional(readOnly = true)
+    public Map<Long, CP58IncentiveTotals> sumAffiliateTotalsByFileYear(int fileYear, long afterGiroFileId, long upToGiroFileId) {
+        return sumTotals("g.affiliate.id", "g.adviser is null and g.affiliate is not null", fileYear, afterGiroFileId, upToGiroFileId);
+    }
+
+    @Transactional(readOnly = true)
+    public Map<Long, CP58IncentiveTotals> sumCompanyTotalsByFileYear(int fileYear, long afterGiroFileId, long upToGiroFileId) {
+        return sumTotals("g.company.id", "g.adviser is null and g.affiliate is null and g.company is not null",
+                fileYear, afterGiroFileId, upToGiroFileId);
+    }
+
+    private Map<Long, CP58IncentiveTotals> sumTotals(String recipientId, String recipientFilter, int fileYear,
+                                                     long afterGiroFileId, long upToGiroFileId) {
+        List<Object[]> rows = entityManager.createQuery(
+                        "select " + recipientId + ", " + SUM_COLUMNS
+                                + " from ConsumeOCBCGiroFile g"
+                                + " where g.fileYear = :fileYear and g.id > :afterId and g.id <= :upToId and " + recipientFilter
+                                + " group by " + recipientId, Object[].class)
+                .setParameter("fileYear", fileYear)
+                .setParameter("afterId", afterGiroFileId)
+                .setParameter("upToId", upToGiroFileId)
+                .getResultList();
+
+        Map<Long, CP58IncentiveTotals> totals = new LinkedHashMap<>();
+        for (Object[] row : rows) {
+            totals.put((Long) row[0], new CP58IncentiveTotals(
+                    (BigDecimal) row[1], (BigDecimal) row[2], (BigDecimal) row[3],
+                    (BigDecimal) row[4], (BigDecimal) row[5], (BigDecimal) row[6]));
+        }
+        return totals;
+    }
+}
@@ -0,0 +1,94 @@
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic CP58 inputs shaped like production data: multi-part addresses
+ * with commas inside values, a mix of Malaysian and foreign countries, C1 and
+ * lettered tax numbers, and amounts with two decimals. A fixed seed keeps runs
+ * comparable.
+ */
+final class CP58BenchmarkData {
+
+    private static final String[] STREETS = {"Jalan Ampang", "Jalan Tun Razak", "Lorong Maarof, Bangsar", "Persiaran KLCC",
+            "Jalan SS 2/24", "Orchard Road", "Jalan Bukit Bintang, Level 12"};
+    private static final String[] CITIES = {"Kuala Lumpur", "Petaling Jaya", "Shah Alam", "Johor Bahru", "Singapore", "George Town"};
+    private static final String[] STATES = {"Wilayah Persekutuan", "Selangor", "Johor", "Pulau Pinang", ""};
+    private static final String[] COUNTRIES = {"MALAYSIA", "Malaysia", "MALAYSIA", "MALAYSIA", "SINGAPORE", "INDONESIA"};
+    private static final CommissionReceiverType[] TYPES = {CommissionReceiverType.ADVISER, CommissionReceiverType.BDM,
+            CommissionReceiverType.BDD, CommissionReceiverType.VEP, CommissionReceiverType.FOV, CommissionReceiverType.MR};
+
+    private CP58BenchmarkData() {
+    }
+
+    static List<String> addresses(int count) {
+        Random random = new Random(58);
+        List<String> addresses = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            addresses.add("{\"addressLine1\":\"No. " + (i + 1) + ", " + pick(random, STREETS) + "\","
+                    + "\"addressLine2\":\"Taman " + (char) ('A' + random.nextInt(26)) + "\","
+                    + "\"city\":\"" + pick(random, CITIES) + "\","
+                    + "\"state\":\"" + pick(random, STATES) + "\","
+                    + "\"postcode\":\"" + (40000 + random.nextInt(50000)) + "\","
+                    + "\"country\":\"" + pick(random, COUNTRIES) + "\"}");
+        }
+        return addresses;
+    }
+
+    static List<String> taxNumbers(int count) {
+        Random random = new Random(58);
+        List<String> taxNumbers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String digits = String.format("%010d", Math.abs(random.nextLong() % 10_000_000_000L));
+            taxNumbers.add(random.nextInt(3) == 0 ? "C1" + digits : "SG " + digits + "-0" + random.nextInt(10));
+        }
+        return taxNumbers;
+    }
+
+    static List<CP58IncentiveTotals> totals(int count) {
+        Random random = new Random(58);
+        List<CP58IncentiveTotals> totals = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            totals.add(new CP58IncentiveTotals(amount(random), amount(random), amount(random),
+                    amount(random), amount(random), random.nextInt(4) == 0 ? null : amount(random)));
+        }
+        return totals;
+    }
+
+    static List<CommissionCP58> commissionCP58(int count) {
+        Random random = new Random(58);
+        List<String> addresses = addresses(count);
+        List<String> taxNumbers = taxNumbers(count);
+        List<CommissionCP58> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            CommissionCP58 cp58 = new CommissionCP58();
+            cp58.setRecipientId((long) i + 1);
+            cp58.setRecipientCode(String.format("VKA%06d", i + 1));
+            cp58.setRecipientName("Recipient Name " + (i + 1) + " Binti Abdullah");
+            cp58.setRecipientType(TYPES[i % TYPES.length]);
+            cp58.setRecipientIdentificationNo(String.format("%06d-%02d-%04d", random.nextInt(1_000_000), random.nextInt(15), random.nextInt(10_000)));
+            cp58.setRecipientIncomeTaxNo(taxNumbers.get(i));
+            CP58AddressParser.Address address = CP58AddressParser.read(addresses.get(i));
+            cp58.setRecipientAddress(address.getFormattedAddress());
+            cp58.setResidentInMalaysia(address.getResidentInMalaysia());
+            cp58.setTotalReferralAmount(amount(random));
+            cp58.setTotalVehicleIncentive(amount(random));
+            cp58.setTotalHouseIncentive(random.nextBoolean() ? amount(random) : null);
+            cp58.setTotalTourTravelPackageIncentive(amount(random));
+            cp58.setTotalTrainingDevelopmentIncentive(random.nextBoolean() ? amount(random) : null);
+            cp58.setTotalOtherIncentive(amount(random));
+            cp58.setYears(2025);
+            rows.add(cp58);
+        }
+        return rows;
+    }
+
+    private static BigDecimal amount(Random random) {
+        return BigDecimal.valueOf(random.nextInt(5_000_000), 2);
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
@@ -0,0 +1,46 @@
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Runs the CP58 benchmarks with the GC profiler attached, so every result
+ * comes with {@code gc.alloc.rate} and {@code gc.alloc.rate.norm} (bytes per
+ * operation) next to the timing. Results are also written to
+ * {@code cp58-jmh.json} for comparison between commits.
+ * <p>
+ * Standard JMH arguments are passed through, e.g. {@code CP58HotPath} to run
+ * one class or {@code -p distinctAddresses=500} to pin a parameter. The
+ * batch fill benchmark is left out when {@code -Dcp58.batch-template} does
+ * not point to an existing template.
+ */
+public final class CP58Benchmarks {
+
+    private CP58Benchmarks() {
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        OptionsBuilder builder = new OptionsBuilder();
+        if (commandLine.getIncludes().isEmpty()) {
+            builder.include("CP58HotPathBenchmark").include("CP58ReportBenchmark");
+        }
+        if (!Files.exists(Paths.get(System.getProperty("cp58.batch-template", "CP58_BATCH.jrxml")))) {
+            builder.exclude("CP58ReportBenchmark.fillBatch");
+        }
+        Options options = builder
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("cp58-jmh.json")
+                .build();
+        new Runner(options).run();
+    }
+}
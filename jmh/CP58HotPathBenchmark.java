@@ -0,0 +1,185 @@
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-recipient CPU work of giro processing and parameter building. Each
+ * invocation handles one recipient, cycling through {@code recipients}
+ * synthetic rows so the JIT cannot specialise on a single input.
+ * <p>
+ * {@code addressBaseline} runs the regex formatting and the separate
+ * residency parse the service used before {@link CP58AddressParser}, for
+ * comparison with {@code addressUncached}. {@code addressCached} reads from
+ * a warm parser; with {@code distinctAddresses} smaller than
+ * {@code recipients} it shows the effect of companies sharing a branch
+ * address.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CP58HotPathBenchmark {
+
+    @Param({"10000"})
+    private int recipients;
+
+    @Param({"10000", "500"})
+    private int distinctAddresses;
+
+    private List<String> addresses;
+    private List<String> taxNumbers;
+    private List<CP58IncentiveTotals> totals;
+    private List<CommissionCP58> rows;
+    private CP58AddressParser cp58AddressParser;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<String> distinct = CP58BenchmarkData.addresses(distinctAddresses);
+        addresses = new ArrayList<>(recipients);
+        for (int i = 0; i < recipients; i++) {
+            addresses.add(distinct.get(i % distinct.size()));
+        }
+        taxNumbers = CP58BenchmarkData.taxNumbers(recipients);
+        totals = CP58BenchmarkData.totals(recipients);
+        rows = CP58BenchmarkData.commissionCP58(recipients);
+        cp58AddressParser = new CP58AddressParser(recipients);
+        for (String address : addresses) {
+            cp58AddressParser.parse(address);
+        }
+    }
+
+    private int next() {
+        index = index + 1 == recipients ? 0 : index + 1;
+        return index;
+    }
+
+    @Benchmark
+    public void addressBaseline(Blackhole blackhole) {
+        String address = addresses.get(next());
+        blackhole.consume(baselineFormatAddress(address));
+        blackhole.consume(baselineIsAddressInMalaysia(address));
+    }
+
+    @Benchmark
+    public CP58AddressParser.Address addressUncached() {
+        return CP58AddressParser.read(addresses.get(next()));
+    }
+
+    @Benchmark
+    public CP58AddressParser.Address addressCached() {
+        return cp58AddressParser.parse(addresses.get(next()));
+    }
+
+    @Benchmark
+    public Map<String, String> extractTaxNoParts() {
+        return CP58Service.extractTaxNoParts(taxNumbers.get(next()));
+    }
+
+    /**
+     * Applying a giro delta to stored totals, as DELTA ingestion does for
+     * every recipient.
+     */
+    @Benchmark
+    public boolean incentiveTotals() {
+        int i = next();
+        CP58IncentiveTotals sum = totals.get(i).add(totals.get(recipients - 1 - i));
+        return sum.matches(totals.get(i));
+    }
+
+    @Benchmark
+    public Map<String, Object> buildParameters() {
+        CommissionCP58 cp58 = rows.get(next());
+        return CP58Service.buildParameters(cp58, cp58.getRecipientType());
+    }
+
+    @Benchmark
+    public CP58ReportRow buildReportRow() {
+        CommissionCP58 cp58 = rows.get(next());
+        return CP58ReportRow.of(CP58Service.buildParameters(cp58, cp58.getRecipientType()));
+    }
+
+    private static String baselineFormatAddress(String jsonAddress) {
+        if (jsonAddress != null) {
+            String cleanedJson = jsonAddress.replaceAll("[{}\"]", "");
+            String[] keyValuePairs = cleanedJson.split(",");
+            String addressLine1 = "";
+            String addressLine2 = "";
+            String city = "";
+            String state = "";
+            String country = "";
+            String postcode = "";
+            String extra = "";
+
+            for (String pair : keyValuePairs) {
+                String[] keyValue = pair.split(":");
+                String key = keyValue[0].trim();
+                String value = keyValue.length > 1 ? keyValue[1].trim() : "";
+
+                switch (key) {
+                    case "addressLine1":
+                        addressLine1 = value;
+                        break;
+                    case "addressLine2":
+                        addressLine2 = value;
+                        break;
+                    case "city":
+                        city = value;
+                        break;
+                    case "state":
+                        state = value;
+                        break;
+                    case "country":
+                        country = value;
+                        break;
+                    case "postcode":
+                        postcode = value;
+                        break;
+                    default:
+                        extra = value;
+                }
+            }
+
+            StringBuilder formattedAddress = new StringBuilder();
+            for (String part : new String[]{addressLine1, addressLine2, city, state, postcode, country, extra}) {
+                if (!part.isEmpty()) {
+                    if (formattedAddress.length() > 0) formattedAddress.append(", ");
+                    formattedAddress.append(part);
+                }
+            }
+            return formattedAddress.toString();
+        }
+        return "";
+    }
+
+    private static Short baselineIsAddressInMalaysia(String jsonAddress) {
+        JsonObject addressObject = JsonParser.parseString(jsonAddress).getAsJsonObject();
+
+        String country = addressObject.has("country") ? addressObject.get("country").getAsString() : null;
+
+        if (CP58Service.MALAYSIA.equalsIgnoreCase(country)) {
+            return 1;
+        }
+
+        return 2;
+    }
+}
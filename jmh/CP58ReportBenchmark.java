@@ -0,0 +1,130 @@
+import net.sf.jasperreports.engine.JREmptyDataSource;
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JasperCompileManager;
+import net.sf.jasperreports.engine.JasperFillManager;
+import net.sf.jasperreports.engine.JasperPrint;
+import net.sf.jasperreports.engine.JasperReport;
+import net.sf.jasperreports.engine.data.JRBeanCollectionDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compile, fill and export of the real CP58 template. The templates are read
+ * from the paths in {@code -Dcp58.template} (default {@code CP58.jrxml}) and
+ * {@code -Dcp58.batch-template} (default {@code CP58_BATCH.jrxml});
+ * {@link CP58Benchmarks} leaves {@code fillBatch} out when the batch
+ * template is missing.
+ * <p>
+ * Export benchmarks reuse one filled print and write into a reset in-memory
+ * stream, so they measure the exporter alone.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CP58ReportBenchmark {
+
+    private static final int RECIPIENTS = 1000;
+    private static final int BATCH_SIZE = 200;
+
+    private byte[] template;
+    private JasperReport jasperReport;
+    private JasperReport batchReport;
+    private List<Map<String, Object>> parameters;
+    private List<CP58ReportRow> batchRows;
+    private JasperPrint jasperPrint;
+    private CP58PdfExporter pdfExporter;
+    private CP58XlsxExporter xlsxExporter;
+    private ByteArrayOutputStream output;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, JRException {
+        template = Files.readAllBytes(Paths.get(System.getProperty("cp58.template", "CP58.jrxml")));
+        jasperReport = JasperCompileManager.compileReport(new ByteArrayInputStream(template));
+
+        String batchTemplate = System.getProperty("cp58.batch-template", "CP58_BATCH.jrxml");
+        if (Files.exists(Paths.get(batchTemplate))) {
+            batchReport = JasperCompileManager.compileReport(batchTemplate);
+        }
+
+        parameters = new ArrayList<>(RECIPIENTS);
+        batchRows = new ArrayList<>(BATCH_SIZE);
+        for (CommissionCP58 cp58 : CP58BenchmarkData.commissionCP58(RECIPIENTS)) {
+            Map<String, Object> recipientParameters = CP58Service.buildParameters(cp58, cp58.getRecipientType());
+            parameters.add(recipientParameters);
+            if (batchRows.size() < BATCH_SIZE) {
+                batchRows.add(CP58ReportRow.of(recipientParameters));
+            }
+        }
+
+        jasperPrint = fill();
+        pdfExporter = new CP58PdfExporter();
+        xlsxExporter = new CP58XlsxExporter(CP58ConsolidatedWorkbookExporter.MODE_PER_RECIPIENT);
+        output = new ByteArrayOutputStream(256 * 1024);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 10)
+    public JasperReport compile() throws JRException {
+        return JasperCompileManager.compileReport(new ByteArrayInputStream(template));
+    }
+
+    @Benchmark
+    public JasperPrint fill() throws JRException {
+        index = index + 1 == RECIPIENTS ? 0 : index + 1;
+        // Copied because the fill may add built-in parameters to the map
+        return JasperFillManager.fillReport(jasperReport, new HashMap<>(parameters.get(index)), new JREmptyDataSource());
+    }
+
+    /**
+     * One batch fill of {@value #BATCH_SIZE} recipients; divide by the batch
+     * size to compare with {@link #fill()}.
+     */
+    @Benchmark
+    public JasperPrint fillBatch() throws JRException {
+        if (batchReport == null) {
+            throw new IllegalStateException("CP58 batch template not found, set -Dcp58.batch-template");
+        }
+        return JasperFillManager.fillReport(batchReport, new HashMap<>(), new JRBeanCollectionDataSource(batchRows, false));
+    }
+
+    @Benchmark
+    public int exportPdf() throws JRException {
+        output.reset();
+        pdfExporter.export(jasperPrint, output);
+        return output.size();
+    }
+
+    @Benchmark
+    public int exportXlsx() throws JRException {
+        output.reset();
+        xlsxExporter.export(jasperPrint, output);
+        return output.size();
+    }
+}
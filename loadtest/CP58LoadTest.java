@@ -0,0 +1,225 @@
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * End-to-end CP58 load test: for every scale it seeds synthetic recipients
+ * into an embedded H2 database, starts an in-process SFTP server, runs
+ * {@link CP58Service#generateCP58(boolean)} and
+ * {@link CP58Service#distributeCP58()}, and prints one line of results.
+ * <p>
+ * Arguments, all optional:
+ * <ul>
+ *     <li>{@code --scales=1000,10000,100000} - recipients per run</li>
+ *     <li>{@code --template=CP58.jrxml} - the real template; {@code CP58_BATCH.jrxml} next to it is copied too</li>
+ *     <li>{@code --work-dir=<tmp>} - where the SFTP root and CP58 folders are created, emptied before each run</li>
+ * </ul>
+ * Any {@code cp58.*} setting can be changed with {@code -D}, e.g.
+ * {@code -Dcp58.generation.workers=8} or {@code -Dcp58.fill.mode=batch}.
+ * Needs H2 and Apache MINA SSHD (sshd-sftp) on the classpath next to the
+ * application. Notifications are queued in the outbox as usual and
+ * swallowed by {@link CP58LoadTestNotificationService}.
+ * <p>
+ * Generated PDFs are moved from the SFTP upload folders to the CP58 OUT
+ * folder between the two jobs, standing in for the transfer that happens
+ * between them in production.
+ */
+public final class CP58LoadTest {
+
+    private static final CommissionReceiverType[] DISTRIBUTED_TYPES = {
+            CommissionReceiverType.ADVISER, CommissionReceiverType.BDM, CommissionReceiverType.BDD};
+
+    private CP58LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        Path template = Paths.get(options.getOrDefault("template", "CP58.jrxml"));
+        Path workDir = Paths.get(options.getOrDefault("work-dir",
+                Paths.get(System.getProperty("java.io.tmpdir"), "cp58-loadtest").toString()));
+
+        System.out.println(header());
+        for (String scale : options.getOrDefault("scales", "1000,10000,100000").split(",")) {
+            System.out.println(run(Integer.parseInt(scale.trim()), template, workDir));
+        }
+    }
+
+    private static String run(int recipients, Path template, Path workDir) throws Exception {
+        deleteRecursively(workDir);
+        Path sftpRoot = workDir.resolve("sftp");
+        createDirectories(workDir, sftpRoot, template);
+
+        try (CP58LoadTestSftpServer sftpServer = new CP58LoadTestSftpServer(sftpRoot);
+             ConfigurableApplicationContext context = start(sftpServer.getPort(), workDir)) {
+            context.getBean(CP58LoadTestData.class).seed(recipients);
+            CP58Service cp58Service = context.getBean(CP58Service.class);
+            MeterRegistry meterRegistry = context.getBean(MeterRegistry.class);
+
+            System.gc();
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                pool.resetPeakUsage();
+            }
+
+            long generationStart = System.nanoTime();
+            GenericResponseVo generated = cp58Service.generateCP58(true);
+            double generationSeconds = seconds(generationStart);
+            if (!Boolean.TRUE.equals(generated.getSuccess())) {
+                throw new IllegalStateException("CP58 generation failed at " + recipients + " recipients: " + generated.getMessage());
+            }
+
+            handOver(sftpRoot, workDir.resolve("cp58").resolve("OUT").resolve("PDF"));
+
+            long distributionStart = System.nanoTime();
+            GenericResponseVo distributed = cp58Service.distributeCP58();
+            double distributionSeconds = seconds(distributionStart);
+            if (!Boolean.TRUE.equals(distributed.getSuccess())) {
+                throw new IllegalStateException("CP58 distribution failed at " + recipients + " recipients: " + distributed.getMessage());
+            }
+
+            long peakHeap = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                    peakHeap += pool.getPeakUsage().getUsed();
+                }
+            }
+
+            Timer recipientTimer = meterRegistry.find(CP58Metrics.RECIPIENT).timer();
+            Timer uploadTimer = meterRegistry.find(CP58Metrics.UPLOAD).timer();
+            long rendered = recipientTimer != null ? recipientTimer.count() : 0;
+            long uploadedFiles = uploadTimer != null ? uploadTimer.count() : 0;
+            Counter distributedCounter = meterRegistry.find("cp58.distribution.files").counter();
+            long distributedFiles = distributedCounter != null ? (long) distributedCounter.count() : 0;
+
+            return String.format("%10d %12.1f %10.1f %10.1f %12d %12.1f %12.1f %10.1f %10.1f",
+                    recipients, rendered / generationSeconds,
+                    percentile(recipientTimer, 0.5), percentile(recipientTimer, 0.99),
+                    peakHeap / (1024 * 1024), uploadedFiles / generationSeconds, distributedFiles / distributionSeconds,
+                    generationSeconds, distributionSeconds);
+        }
+    }
+
+    private static ConfigurableApplicationContext start(int sftpPort, Path workDir) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("spring.main.web-application-type", "none");
+        properties.put("spring.datasource.url", "jdbc:h2:mem:cp58-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        properties.put("spring.datasource.username", "sa");
+        properties.put("spring.datasource.password", "");
+        properties.put("spring.jpa.hibernate.ddl-auto", "create-drop");
+        properties.put("spring.jpa.properties.hibernate.jdbc.batch_size", "500");
+        properties.put("cp58.loadtest.work-dir", workDir.toString());
+        properties.put("cp58.loadtest.sftp-port", String.valueOf(sftpPort));
+        properties.put("cp58.sftp.pool.enabled", "true");
+        properties.put("cp58.generation.workers", String.valueOf(Runtime.getRuntime().availableProcessors()));
+        // Only the node under test renders, and the outbox sweep stays out of the measurements
+        properties.put("cp58.sharding.enabled", "false");
+        properties.put("cp58.notification.sweep-interval-ms", String.valueOf(TimeUnit.HOURS.toMillis(1)));
+
+        return new SpringApplicationBuilder(CP58LoadTestApplication.class)
+                .properties(properties)
+                .run();
+    }
+
+    private static void createDirectories(Path workDir, Path sftpRoot, Path template) throws IOException {
+        Path templateDir = workDir.resolve("template");
+        Files.createDirectories(templateDir);
+        Files.copy(template, templateDir.resolve(CP58TemplateCache.TEMPLATE_NAME));
+        Path batchTemplate = template.resolveSibling("CP58_BATCH.jrxml");
+        if (Files.exists(batchTemplate)) {
+            Files.copy(batchTemplate, templateDir.resolve(batchTemplate.getFileName()));
+        }
+
+        CP58PdfExporter pdfExporter = new CP58PdfExporter();
+        CP58XlsxExporter xlsxExporter = new CP58XlsxExporter(CP58ConsolidatedWorkbookExporter.MODE_PER_RECIPIENT);
+        for (CommissionReceiverType type : CommissionReceiverType.values()) {
+            try {
+                Files.createDirectories(remoteDir(sftpRoot, pdfExporter.getOutputPath(type)));
+                Files.createDirectories(remoteDir(sftpRoot, xlsxExporter.getOutputPath(type)));
+            } catch (ServiceAppException e) {
+                // Not a CP58 recipient type
+            }
+        }
+    }
+
+    /**
+     * Moves the uploaded PDFs and the manifests folder of every distributed
+     * type into the folder {@link CP58Service#distributeCP58()} reads.
+     */
+    private static void handOver(Path sftpRoot, Path outPdfDir) throws IOException {
+        CP58PdfExporter pdfExporter = new CP58PdfExporter();
+        for (CommissionReceiverType type : DISTRIBUTED_TYPES) {
+            Path source = remoteDir(sftpRoot, pdfExporter.getOutputPath(type));
+            Path target = outPdfDir.resolve(type.name());
+            Files.createDirectories(target);
+            try (Stream<Path> files = Files.list(source)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.move(file, target.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+    }
+
+    private static Path remoteDir(Path sftpRoot, String remotePath) {
+        return sftpRoot.resolve(remotePath.startsWith("/") ? remotePath.substring(1) : remotePath);
+    }
+
+    private static double percentile(Timer timer, double percentile) {
+        if (timer == null) {
+            return 0;
+        }
+        for (ValueAtPercentile value : timer.takeSnapshot().percentileValues()) {
+            if (value.percentile() == percentile) {
+                return value.value(TimeUnit.MILLISECONDS);
+            }
+        }
+        return 0;
+    }
+
+    private static String header() {
+        return String.format("%10s %12s %10s %10s %12s %12s %12s %10s %10s",
+                "recipients", "rendered/s", "p50 ms", "p99 ms", "peak heap MB", "uploads/s", "distrib/s", "gen s", "dist s");
+    }
+
+    private static double seconds(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000_000.0;
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        return options;
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
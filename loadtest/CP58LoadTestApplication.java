@@ -0,0 +1,54 @@
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import java.nio.file.Paths;
+
+/**
+ * Application context for one load test run: the CP58 beans against the
+ * embedded database configured by {@link CP58LoadTest}, with the load test's
+ * {@link BaseSFTP}, a notification service that sends nothing and an
+ * in-memory meter registry that keeps p50 and p99 of every CP58 timer.
+ */
+@EnableScheduling
+@SpringBootApplication
+public class CP58LoadTestApplication {
+
+    @Bean
+    @Primary
+    public BaseSFTP cp58LoadTestBaseSFTP(@Value("${cp58.loadtest.work-dir}") String workDir,
+                                         @Value("${cp58.loadtest.sftp-port}") int sftpPort) {
+        return new CP58LoadTestBaseSFTP(Paths.get(workDir), sftpPort);
+    }
+
+    @Bean
+    @Primary
+    public NotificationService cp58LoadTestNotificationService() {
+        return new CP58LoadTestNotificationService();
+    }
+
+    @Bean
+    public MeterRegistry cp58LoadTestMeterRegistry() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        registry.config().meterFilter(new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                if (!id.getName().startsWith("cp58.")) {
+                    return config;
+                }
+                return DistributionStatisticConfig.builder()
+                        .percentiles(0.5, 0.99)
+                        .build()
+                        .merge(config);
+            }
+        });
+        return registry;
+    }
+}
@@ -0,0 +1,79 @@
+import java.nio.file.Path;
+
+/**
+ * {@link BaseSFTP} pointed at the load test's working directory: the template
+ * folder, the CP58 OUT folder that distribution reads, and the distributed
+ * and archive folders. Its connection settings lead to the in-process
+ * {@link CP58LoadTestSftpServer}. Uploads go through
+ * {@link CP58SftpChannelPool}, which the load test always enables, so the
+ * upload method is not used.
+ */
+class CP58LoadTestBaseSFTP extends BaseSFTP {
+
+    private final Path workDir;
+    private final int port;
+
+    CP58LoadTestBaseSFTP(Path workDir, int port) {
+        this.workDir = workDir;
+        this.port = port;
+    }
+
+    @Override
+    public String getHost() {
+        return "127.0.0.1";
+    }
+
+    @Override
+    public int getPort() {
+        return port;
+    }
+
+    @Override
+    public String getUsername() {
+        return CP58LoadTestSftpServer.USERNAME;
+    }
+
+    @Override
+    public String getPassword() {
+        return CP58LoadTestSftpServer.PASSWORD;
+    }
+
+    @Override
+    public String getPrivateKey() {
+        return null;
+    }
+
+    @Override
+    public String getKnownHosts() {
+        return null;
+    }
+
+    /**
+     * The in-process server generates its host key on first start, so there
+     * is nothing to verify it against.
+     */
+    @Override
+    public String getStrictHostKeyChecking() {
+        return "no";
+    }
+
+    @Override
+    public String cp58Template() {
+        return workDir.resolve("template").toString();
+    }
+
+    @Override
+    public String Cp58Directory() {
+        return workDir.resolve("cp58") + "/";
+    }
+
+    @Override
+    public String distributedCP58Directory() {
+        return workDir.resolve("distributed").toString();
+    }
+
+    @Override
+    public String archivedCP58Directory() {
+        return workDir.resolve("archived").toString();
+    }
+}
@@ -0,0 +1,163 @@
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Year;
+import java.util.Random;
+
+/**
+ * Seeds synthetic CP58 recipients into the embedded database.
+ * <ul>
+ *     <li>60% advisers and 20% companies (half BDM, half BDD) get a master
+ *     record, one to four giro rows of the current year and the
+ *     {@link CommissionOCBCGiro} row that sets their receiver type, so
+ *     they go through giro processing</li>
+ *     <li>the remaining 20% are VEP, FOV and MR recipients seeded straight as
+ *     {@link CommissionCP58} rows; their affiliate role entities are outside
+ *     this code base</li>
+ * </ul>
+ * Names and codes are alphanumeric so file names match the distribution
+ * pattern. A fixed seed keeps runs of the same size comparable.
+ */
+@Slf4j
+@Component
+public class CP58LoadTestData {
+
+    private static final int BATCH_SIZE = 1000;
+    private static final String[] COUNTRIES = {"MALAYSIA", "MALAYSIA", "MALAYSIA", "SINGAPORE"};
+    private static final CommissionReceiverType[] AFFILIATE_TYPES = {
+            CommissionReceiverType.VEP, CommissionReceiverType.FOV, CommissionReceiverType.MR};
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final TransactionTemplate transactionTemplate;
+
+    public CP58LoadTestData(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public void seed(int recipients) {
+        Random random = new Random(58);
+        int advisers = recipients * 6 / 10;
+        int companies = recipients * 2 / 10;
+        int affiliates = recipients - advisers - companies;
+
+        for (int from = 0; from < recipients; from += BATCH_SIZE) {
+            int start = from;
+            int end = Math.min(from + BATCH_SIZE, recipients);
+            transactionTemplate.executeWithoutResult(status -> {
+                for (int i = start; i < end; i++) {
+                    if (i < advisers) {
+                        seedAdviser(random, i);
+                    } else if (i < advisers + companies) {
+                        seedCompany(random, i, (i - advisers) % 2 == 0 ? CommissionReceiverType.BDM : CommissionReceiverType.BDD);
+                    } else {
+                        seedAffiliateCP58(random, i, AFFILIATE_TYPES[(i - advisers - companies) % AFFILIATE_TYPES.length]);
+                    }
+                }
+                entityManager.flush();
+                entityManager.clear();
+            });
+        }
+        log.info("Seeded " + advisers + " advisers, " + companies + " companies and " + affiliates + " affiliate CP58 rows");
+    }
+
+    private void seedAdviser(Random random, int i) {
+        Planner planner = new Planner();
+        planner.setVkaCode(String.format("VKA%07d", i));
+        planner.setPreferredName("Adviser" + i);
+        planner.setIdentificationNo(identificationNo(random));
+        planner.setIncomeTaxNo(random.nextInt(3) == 0 ? "C1" + digits(random, 10) : "SG" + digits(random, 10));
+        planner.setResidentialAddress(address(random, i));
+        entityManager.persist(planner);
+
+        for (int row = random.nextInt(4); row >= 0; row--) {
+            ConsumeOCBCGiroFile giro = giroRow(random);
+            giro.setAdviser(planner);
+            entityManager.persist(giro);
+        }
+        receiverType(planner.getId(), CommissionReceiverType.ADVISER);
+    }
+
+    private void seedCompany(Random random, int i, CommissionReceiverType type) {
+        Company company = new Company();
+        company.setCode(String.format("CO%07d", i));
+        company.setName("Company" + i);
+        company.setNewBusinessRegNo("2020" + digits(random, 8));
+        entityManager.persist(company);
+
+        for (int row = random.nextInt(4); row >= 0; row--) {
+            ConsumeOCBCGiroFile giro = giroRow(random);
+            giro.setCompany(company);
+            entityManager.persist(giro);
+        }
+        receiverType(company.getId(), type);
+    }
+
+    private void seedAffiliateCP58(Random random, int i, CommissionReceiverType type) {
+        CommissionCP58 cp58 = new CommissionCP58();
+        cp58.setRecipientId((long) i);
+        cp58.setRecipientCode(String.format("AF%07d", i));
+        cp58.setRecipientName("Affiliate" + i);
+        cp58.setRecipientType(type);
+        cp58.setRecipientIdentificationNo(identificationNo(random));
+        cp58.setRecipientIncomeTaxNo("");
+        CP58AddressParser.Address address = CP58AddressParser.read(address(random, i));
+        cp58.setRecipientAddress(address.getFormattedAddress());
+        cp58.setResidentInMalaysia(address.getResidentInMalaysia());
+        cp58.setTotalReferralAmount(amount(random));
+        cp58.setTotalVehicleIncentive(amount(random));
+        cp58.setTotalHouseIncentive(amount(random));
+        cp58.setTotalTourTravelPackageIncentive(amount(random));
+        cp58.setTotalTrainingDevelopmentIncentive(amount(random));
+        cp58.setTotalOtherIncentive(amount(random));
+        cp58.setYears(Year.now().getValue() - 1);
+        entityManager.persist(cp58);
+    }
+
+    private ConsumeOCBCGiroFile giroRow(Random random) {
+        ConsumeOCBCGiroFile giro = new ConsumeOCBCGiroFile();
+        giro.setFileYear(Year.now().getValue());
+        giro.setTotalReferralFee(amount(random));
+        giro.setTotalVehicleIncentive(amount(random));
+        giro.setTotalHouseIncentive(amount(random));
+        giro.setTotalTourTravelPackageIncentive(amount(random));
+        giro.setTotalOthers(amount(random));
+        giro.setTotalTrainingDevelopmentIncentive(amount(random));
+        return giro;
+    }
+
+    private void receiverType(Long recipientId, CommissionReceiverType type) {
+        CommissionOCBCGiro giro = new CommissionOCBCGiro();
+        giro.setCommissionReceiverTypeId(recipientId);
+        giro.setCommissionReceiverType(type);
+        entityManager.persist(giro);
+    }
+
+    private static String address(Random random, int i) {
+        return "{\"addressLine1\":\"No. " + (i % 500 + 1) + ", Jalan " + (char) ('A' + random.nextInt(26)) + "\","
+                + "\"city\":\"Kuala Lumpur\",\"postcode\":\"" + (50000 + random.nextInt(1000)) + "\","
+                + "\"country\":\"" + COUNTRIES[random.nextInt(COUNTRIES.length)] + "\"}";
+    }
+
+    private static String identificationNo(Random random) {
+        return digits(random, 6) + "-" + digits(random, 2) + "-" + digits(random, 4);
+    }
+
+    private static String digits(Random random, int length) {
+        StringBuilder digits = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            digits.append((char) ('0' + random.nextInt(10)));
+        }
+        return digits.toString();
+    }
+
+    private static BigDecimal amount(Random random) {
+        return BigDecimal.valueOf(random.nextInt(500_000), 2);
+    }
+}
@@ -0,0 +1,12 @@
+/**
+ * {@link NotificationService} that sends nothing, so a load test run can
+ * never notify real planners. Distribution still queues and dispatches its
+ * notifications through the outbox, they just end here.
+ */
+class CP58LoadTestNotificationService extends NotificationService {
+
+    @Override
+    public void sendPaymentVoucherDistributionComplete(Long plannerId, Planner planner) {
+        // Deliberately empty
+    }
+}
@@ -0,0 +1,61 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class CP58AddressParserTest {
+
+    @Test
+    void keepsCommasAndColonsInsideValues() {
+        CP58AddressParser.Address address = CP58AddressParser.read("{\"addressLine1\":\"No. 1, Jalan 2/3\","
+                + "\"addressLine2\":\"Level 3: Tower A\",\"city\":\"Kuala Lumpur\",\"postcode\":\"50000\","
+                + "\"country\":\"Malaysia\"}");
+
+        assertEquals("No. 1, Jalan 2/3, Level 3: Tower A, Kuala Lumpur, 50000, Malaysia", address.getFormattedAddress());
+        assertEquals(CP58AddressParser.RESIDENT, (short) address.getResidentInMalaysia());
+    }
+
+    @Test
+    void printsPartsInAddressOrderWithTheExtraKeyLast() {
+        CP58AddressParser.Address address = CP58AddressParser.read("{\"country\":\"SINGAPORE\",\"unit\":\"#01-02\","
+                + "\"postcode\":\"018956\",\"state\":\"\",\"city\":\"Singapore\",\"addressLine1\":\"1 Marina Blvd\"}");
+
+        assertEquals("1 Marina Blvd, Singapore, 018956, SINGAPORE, #01-02", address.getFormattedAddress());
+        assertEquals(CP58AddressParser.NON_RESIDENT, (short) address.getResidentInMalaysia());
+    }
+
+    @Test
+    void readsNonStringValues() {
+        CP58AddressParser.Address address = CP58AddressParser.read("{\"addressLine1\":\"  No. 7  \",\"addressLine2\":null,"
+                + "\"postcode\":47500,\"geo\":{\"lat\":3.1,\"lng\":101.6},\"tags\":[\"home\"],\"country\":\"malaysia\"}");
+
+        assertEquals("No. 7, 47500, malaysia", address.getFormattedAddress());
+        assertEquals(CP58AddressParser.RESIDENT, (short) address.getResidentInMalaysia());
+    }
+
+    @Test
+    void readsLenientJson() {
+        CP58AddressParser.Address address = CP58AddressParser.read("{addressLine1: 'No. 5, Jalan Ampang', city: Ipoh,"
+                + " country: 'MALAYSIA'}");
+
+        assertEquals("No. 5, Jalan Ampang, Ipoh, MALAYSIA", address.getFormattedAddress());
+        assertEquals(CP58AddressParser.RESIDENT, (short) address.getResidentInMalaysia());
+    }
+
+    @Test
+    void treatsMissingAddressAsEmptyAndNonResident() {
+        CP58AddressParser.Address address = new CP58AddressParser(10).parse(null);
+
+        assertEquals("", address.getFormattedAddress());
+        assertEquals(CP58AddressParser.NON_RESIDENT, (short) address.getResidentInMalaysia());
+        assertEquals(CP58AddressParser.NON_RESIDENT, (short) CP58AddressParser.read("{}").getResidentInMalaysia());
+    }
+
+    @Test
+    void cachesParsedAddresses() {
+        CP58AddressParser parser = new CP58AddressParser(10);
+        String json = "{\"addressLine1\":\"No. 9\",\"country\":\"MALAYSIA\"}";
+
+        assertSame(parser.parse(json), parser.parse(json));
+    }
+}